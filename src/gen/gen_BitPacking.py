@@ -0,0 +1,135 @@
+#!/usr/bin/env python3
+"""
+Generates src/main/java/net/magik6k/bitbuffer/BitPacking.java, straight-line
+packing kernels for every value width 1-63 in both bit orders.
+
+Usage: python3 src/gen/gen_BitPacking.py > src/main/java/net/magik6k/bitbuffer/BitPacking.java
+"""
+
+BLOCK = 64
+TERMS_PER_LINE = 4
+
+HEADER = """// Generated by src/gen/gen_BitPacking.py, do not edit.
+package net.magik6k.bitbuffer;
+
+/**
+ * Packing kernels for blocks of 64 fixed-width values. Block of 64 values of
+ * width n occupies exactly n longs, first value starting at MSB of the first long,
+ * or at LSB of the first long for the *Lsb variants.
+ * Every width has its own straight-line kernel, so that all shifts are constant.
+ */
+final class BitPacking {
+	static final int BLOCK = %d;
+
+	private BitPacking() {
+	}
+""" % BLOCK
+
+
+def mask(bits):
+    return "0x%XL" % ((1 << bits) - 1)
+
+
+def shifted(value, left, right):
+    if left:
+        return "%s << %d" % (value, left)
+    if right:
+        return "%s >>> %d" % (value, right)
+    return value
+
+
+def overlapping(bits, word):
+    """Values overlapping given word, with their first bit relative to the word"""
+    for i in range(BLOCK):
+        start = i * bits - word * 64
+        if start < 64 and start + bits > 0:
+            yield i, start
+
+
+def join(terms):
+    lines = []
+    for i in range(0, len(terms), TERMS_PER_LINE):
+        lines.append(" | ".join(terms[i:i + TERMS_PER_LINE]))
+    return "\n\t\t\t\t| ".join(lines)
+
+
+def pack(bits, lsb):
+    out = ["\tprivate static void pack%s%d(long[] src, int offset, long[] words){" % ("Lsb" if lsb else "", bits)]
+    for word in range(bits):
+        terms = []
+        for i, start in overlapping(bits, word):
+            value = "(src[offset + %d] & %s)" % (i, mask(bits)) if i else "(src[offset] & %s)" % mask(bits)
+            if lsb:
+                terms.append(shifted(value, max(start, 0), max(-start, 0)))
+            else:
+                end = start + bits
+                terms.append(shifted(value, max(64 - end, 0), max(end - 64, 0)))
+        out.append("\t\twords[%d] = %s;" % (word, join(terms)))
+    out.append("\t}")
+    return "\n".join(out)
+
+
+def unpack(bits, lsb):
+    out = ["\tprivate static void unpack%s%d(long[] words, long[] dst, int offset){" % ("Lsb" if lsb else "", bits)]
+    for i in range(BLOCK):
+        word, start = divmod(i * bits, 64)
+        end = start + bits
+        if lsb:
+            if end <= 64:
+                value = "words[%d] << %d" % (word, 64 - end) if end < 64 else "words[%d]" % word
+            else:
+                value = "(words[%d] >>> %d | words[%d] << %d) << %d" % (word, start, word + 1, 64 - start, 64 - bits)
+        else:
+            if end <= 64:
+                value = "words[%d] << %d" % (word, start) if start else "words[%d]" % word
+            else:
+                value = "(words[%d] << %d | words[%d] >>> %d)" % (word, start, word + 1, 64 - start)
+        target = "dst[offset + %d]" % i if i else "dst[offset]"
+        out.append("\t\t%s = (%s) >> %d;" % (target, value, 64 - bits))
+    out.append("\t}")
+    return "\n".join(out)
+
+
+def dispatch(name, params, args, doc):
+    out = ["\t/**"] + ["\t * " + line for line in doc] + ["\t */",
+           "\tstatic void %s(%s, int bits){" % (name, params),
+           "\t\tswitch(bits){"]
+    for bits in range(1, 64):
+        out.append("\t\tcase %d: %s%d(%s); return;" % (bits, name, bits, args))
+    out.append("\t\tdefault: throw new IllegalArgumentException(\"Invalid width: \" + bits);")
+    out.append("\t\t}")
+    out.append("\t}")
+    return "\n".join(out)
+
+
+def main():
+    parts = [HEADER]
+    for lsb in (False, True):
+        suffix = "Lsb" if lsb else ""
+        order = "LSB-first" if lsb else "MSB-first"
+        parts.append(dispatch("pack" + suffix, "long[] src, int offset, long[] words", "src, offset, words",
+                              ["Packs %d values into %s words" % (BLOCK, order),
+                               "@param src Values, bits above the width are ignored",
+                               "@param offset Index of the first value",
+                               "@param words Array of at least bits words",
+                               "@param bits Width of the values, 1-63"]))
+        parts.append("")
+        parts.append(dispatch("unpack" + suffix, "long[] words, long[] dst, int offset", "words, dst, offset",
+                              ["Unpacks %d sign extended values from %s words" % (BLOCK, order),
+                               "@param words Array of at least bits words",
+                               "@param dst Array to put values to",
+                               "@param offset Index of the first value",
+                               "@param bits Width of the values, 1-63"]))
+        parts.append("")
+    for lsb in (False, True):
+        for bits in range(1, 64):
+            parts.append(pack(bits, lsb))
+            parts.append("")
+            parts.append(unpack(bits, lsb))
+            parts.append("")
+    parts[-1] = "}"
+    print("\n".join(parts))
+
+
+if __name__ == "__main__":
+    main()
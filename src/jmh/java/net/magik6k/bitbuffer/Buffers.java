@@ -0,0 +1,22 @@
+package net.magik6k.bitbuffer;
+
+/**
+ * Creates buffers of the implementation selected by benchmark parameter
+ */
+final class Buffers {
+	private Buffers() {
+	}
+	
+	static BitBuffer create(String type, long bits){
+		switch(type){
+		case "array":
+			return BitBuffer.allocate(bits);
+		case "direct":
+			return BitBuffer.allocateDirect(bits);
+		case "dynamic":
+			return BitBuffer.allocateDynamic(bits, GrowthPolicy.DOUBLING);
+		default:
+			throw new IllegalArgumentException("Unknown buffer type " + type);
+		}
+	}
+}
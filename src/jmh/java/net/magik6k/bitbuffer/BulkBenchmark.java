@@ -0,0 +1,120 @@
+package net.magik6k.bitbuffer;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bulk operations over {@value #VALUES} values
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkBenchmark {
+	static final int VALUES = 4096;
+	static final String TEXT = "The quick brown fox jumps over the lazy dog, 0123456789";
+	
+	@Param({"array", "direct", "dynamic"})
+	String type;
+	
+	@Param({"0", "3"})
+	int offset;
+	
+	@Param({"17"})
+	int bits;
+	
+	private BitBuffer buffer;
+	private BitBuffer source;
+	private int[] ints;
+	private ByteBuffer bytes;
+	private BitSet bitSet;
+	
+	@Setup(Level.Trial)
+	public void setup(){
+		buffer = Buffers.create(type, offset + VALUES * 64L);
+		source = Buffers.create(type, VALUES * 32L);
+		Random random = new Random(0);
+		ints = new int[VALUES];
+		for(int i = 0; i < VALUES; ++i){
+			ints[i] = random.nextInt();
+			source.putInt(ints[i]);
+		}
+		source.flip();
+		bytes = ByteBuffer.allocate(VALUES * 4);
+		bitSet = BitSet.valueOf(source.asByteArray());
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		buffer.close();
+		source.close();
+	}
+	
+	@Benchmark
+	public BitBuffer putIntArray(){
+		buffer.setPosition(offset);
+		return buffer.put(ints, bits);
+	}
+	
+	@Benchmark
+	public int[] getIntArray(){
+		buffer.setPosition(offset);
+		return buffer.get(ints, bits);
+	}
+	
+	@Benchmark
+	public BitBuffer putBuffer(){
+		buffer.setPosition(offset);
+		source.setPosition(0);
+		return buffer.put(source);
+	}
+	
+	@Benchmark
+	public String putGetString(){
+		buffer.setPosition(offset);
+		buffer.putString(TEXT);
+		buffer.setPosition(offset);
+		return buffer.getString(TEXT.length());
+	}
+	
+	@Benchmark
+	public byte[] asByteArray(){
+		return source.asByteArray();
+	}
+	
+	/**
+	 * Baseline for bulk copies
+	 */
+	@Benchmark
+	public ByteBuffer byteBufferPutIntArray(){
+		bytes.clear();
+		bytes.asIntBuffer().put(ints);
+		return bytes;
+	}
+	
+	/**
+	 * Baseline for bulk copies
+	 */
+	@Benchmark
+	public BitSet bitSetCopy(){
+		return (BitSet) bitSet.clone();
+	}
+}
@@ -0,0 +1,171 @@
+package net.magik6k.bitbuffer;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Single field access, {@value #FIELDS} fields per invocation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+	static final int FIELDS = 1024;
+	
+	@Param({"array", "direct", "dynamic"})
+	String type;
+	
+	/**
+	 * Bit offset of the first field, 0 keeps 8, 16, 32 and 64 bit fields byte aligned
+	 */
+	@Param({"0", "3"})
+	int offset;
+	
+	@Param({"7", "32", "64"})
+	int bits;
+	
+	private BitBuffer buffer;
+	private ByteBuffer bytes;
+	private BitSet bitSet;
+	
+	@Setup(Level.Trial)
+	public void setup(){
+		buffer = Buffers.create(type, offset + FIELDS * 64L);
+		bytes = ByteBuffer.allocate(FIELDS * 8);
+		bitSet = new BitSet(FIELDS * 64);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		buffer.close();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public BitBuffer putInt(){
+		buffer.setPosition(offset);
+		int count = Math.min(bits, 32);
+		for(int i = 0; i < FIELDS; ++i){
+			buffer.putInt(i, count);
+		}
+		return buffer;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public BitBuffer putLong(){
+		buffer.setPosition(offset);
+		for(int i = 0; i < FIELDS; ++i){
+			buffer.putLong(i, bits);
+		}
+		return buffer;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public BitBuffer writerWriteBits(){
+		buffer.setPosition(offset);
+		BitWriter writer = new BitWriter(buffer);
+		for(int i = 0; i < FIELDS; ++i){
+			writer.writeBits(i, bits);
+		}
+		writer.flush();
+		return buffer;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void getInt(Blackhole blackhole){
+		buffer.setPosition(offset);
+		int count = Math.min(bits, 32);
+		for(int i = 0; i < FIELDS; ++i){
+			blackhole.consume(buffer.getInt(count));
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void getLong(Blackhole blackhole){
+		buffer.setPosition(offset);
+		for(int i = 0; i < FIELDS; ++i){
+			blackhole.consume(buffer.getLong(bits));
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void readerReadBits(Blackhole blackhole){
+		buffer.setPosition(offset);
+		BitReader reader = new BitReader(buffer);
+		for(int i = 0; i < FIELDS; ++i){
+			blackhole.consume(reader.readBits(bits));
+		}
+	}
+	
+	/**
+	 * Baseline, byte aligned 64 bit fields
+	 */
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public ByteBuffer byteBufferPutLong(){
+		bytes.clear();
+		for(int i = 0; i < FIELDS; ++i){
+			bytes.putLong(i);
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Baseline, byte aligned 64 bit fields
+	 */
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public void byteBufferGetLong(Blackhole blackhole){
+		bytes.clear();
+		for(int i = 0; i < FIELDS; ++i){
+			blackhole.consume(bytes.getLong());
+		}
+	}
+	
+	/**
+	 * Baseline, single bits
+	 */
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public BitSet bitSetSet(){
+		for(int i = 0; i < FIELDS; ++i){
+			bitSet.set(offset + i, (i & 1) != 0);
+		}
+		return bitSet;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(FIELDS)
+	public BitBuffer putBoolean(){
+		buffer.setPosition(offset);
+		for(int i = 0; i < FIELDS; ++i){
+			buffer.putBoolean((i & 1) != 0);
+		}
+		return buffer;
+	}
+}
@@ -1,15 +1,22 @@
 package net.magik6k.bitbuffer;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 class ArrayBitBuffer extends SimpleBitBuffer{
 	private byte[] bytes;
+	private ByteBuffer words;
+	private ByteBuffer wordsLE;
 	
 	protected ArrayBitBuffer(long bits) {
-		bytes = new byte[(int) Math.ceil(bits / 8.d)];
+		this(new byte[(int) Math.ceil(bits / 8.d)]);
 		limit = bits;
 	}
 	
 	protected ArrayBitBuffer(byte[] bytes) {
 		this.bytes = bytes;
+		this.words = ByteBuffer.wrap(bytes);
+		this.wordsLE = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
 		limit = bytes.length * 8L;
 	}
 
@@ -22,6 +29,41 @@ class ArrayBitBuffer extends SimpleBitBuffer{
 	protected void rawSet(long index, byte value) {
 		bytes[(int) index] = value;
 	}
+	
+	@Override
+	protected long rawGetLong(long index) {
+		return words.getLong((int) index);
+	}
+	
+	@Override
+	protected void rawSetLong(long index, long value) {
+		words.putLong((int) index, value);
+	}
+	
+	@Override
+	protected long rawGetLongLE(long index) {
+		return wordsLE.getLong((int) index);
+	}
+	
+	@Override
+	protected void rawSetLongLE(long index, long value) {
+		wordsLE.putLong((int) index, value);
+	}
+
+	@Override
+	protected void rawGetBytes(long index, byte[] dst, int offset, int length) {
+		System.arraycopy(bytes, (int) index, dst, offset, length);
+	}
+	
+	@Override
+	protected void rawSetBytes(long index, byte[] src, int offset, int length) {
+		System.arraycopy(src, offset, bytes, (int) index, length);
+	}
+	
+	@Override
+	protected byte[] rawArray() {
+		return bytes;
+	}
 
 	@Override
 	protected long rawLength() {
@@ -0,0 +1,99 @@
+package net.magik6k.bitbuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transfer of byte range of buffer's storage to or from a file, continued from completion handlers.
+ * Bytes are transferred directly from the storage when it can be exposed as ByteBuffer,
+ * otherwise through a bounded chunk, one chunk at a time.
+ */
+final class AsyncTransfer implements CompletionHandler<Integer, Void> {
+	private static final int CHUNK = 8192;
+
+	private final SimpleBitBuffer buffer;
+	private final AsynchronousFileChannel channel;
+	private final boolean write;
+	private final long filePosition;
+	private final long start;
+	private final int length;
+	private final ByteBuffer view;
+	private final byte[] chunk;
+	private final CompletableFuture<Integer> future = new CompletableFuture<>();
+	private int done;
+
+	private AsyncTransfer(SimpleBitBuffer buffer, AsynchronousFileChannel channel, boolean write, long filePosition, long start, int length) {
+		this.buffer = buffer;
+		this.channel = channel;
+		this.write = write;
+		this.filePosition = filePosition;
+		this.start = start;
+		this.length = length;
+		ByteBuffer view = buffer.rawView();
+		if(view != null){
+			view.limit((int) (start + length)).position((int) start);
+			this.view = view;
+			this.chunk = null;
+		}else{
+			this.chunk = new byte[Math.min(length, CHUNK)];
+			this.view = ByteBuffer.wrap(chunk);
+		}
+	}
+
+	static CompletableFuture<Integer> write(SimpleBitBuffer buffer, AsynchronousFileChannel channel, long filePosition, long start, int length){
+		AsyncTransfer transfer = new AsyncTransfer(buffer, channel, true, filePosition, start, length);
+		transfer.next();
+		return transfer.future;
+	}
+
+	static CompletableFuture<Integer> read(SimpleBitBuffer buffer, AsynchronousFileChannel channel, long filePosition, long start, int length){
+		AsyncTransfer transfer = new AsyncTransfer(buffer, channel, false, filePosition, start, length);
+		transfer.next();
+		return transfer.future;
+	}
+
+	private void next(){
+		if(done == length){
+			future.complete(done);
+			return;
+		}
+		try{
+			if(chunk != null){
+				int n = Math.min(chunk.length, length - done);
+				if(write)
+					buffer.rawGetBytes(start + done, chunk, 0, n);
+				view.clear().limit(n);
+			}
+			if(write)
+				channel.write(view, filePosition + done, null, this);
+			else
+				channel.read(view, filePosition + done, null, this);
+		}catch(Throwable t){
+			future.completeExceptionally(t);
+		}
+	}
+
+	@Override
+	public void completed(Integer result, Void attachment) {
+		if(result < 0){
+			future.complete(done == 0 ? -1 : done);
+			return;
+		}
+		try{
+			if(!write && chunk != null)
+				buffer.rawSetBytes(start + done, chunk, 0, result);
+		}catch(Throwable t){
+			future.completeExceptionally(t);
+			return;
+		}
+		done += result;
+		next();
+	}
+
+	@Override
+	public void failed(Throwable exc, Void attachment) {
+		future.completeExceptionally(exc);
+	}
+}
@@ -1,49 +1,152 @@
 package net.magik6k.bitbuffer;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 class AutomaticBitBuffer extends SimpleBitBuffer{
 	private static final int DEFAULT_CAPACITY = 128;
+	private static final int SEGMENT_SHIFT = 30;
 	
-	private byte[] bytes;
+	private final GrowthPolicy policy;
+	private final int segmentShift;
+	private final long segmentMask;
+	
+	private byte[][] segments;
+	private ByteBuffer[] words;
+	private long capacity;
 	
 	protected AutomaticBitBuffer() {
-		bytes = new byte[DEFAULT_CAPACITY];
+		this(DEFAULT_CAPACITY * 8L, GrowthPolicy.DOUBLING);
 	}
 	
 	protected AutomaticBitBuffer(long initialCapacity){
-		bytes = new byte[(int)toBytes(initialCapacity)];
+		this(initialCapacity, GrowthPolicy.DOUBLING);
 	}
 	
-	private static long toBytes(long bits){
-		return (int) Math.ceil(bits / 8.d);
+	protected AutomaticBitBuffer(long initialCapacity, GrowthPolicy policy){
+		this(initialCapacity, policy, SEGMENT_SHIFT);
 	}
 	
+	AutomaticBitBuffer(long initialCapacity, GrowthPolicy policy, int segmentShift){
+		this.policy = policy;
+		this.segmentShift = segmentShift;
+		this.segmentMask = (1L << segmentShift) - 1;
+		segments = new byte[0][];
+		words = new ByteBuffer[0];
+		reallocate(toBytes(initialCapacity));
+	}
+	
+	private static long toBytes(long bits){
+		return (bits + 7) >>> 3;
+	}
 	
 	@Override
 	protected byte rawGet(long index) {
-		if(index >= bytes.length){
-			ensureCapacity((int)index+1);
+		if(index >= capacity){
+			grow(index+1);
 		}
-		return bytes[(int)index];
+		return segments[(int)(index >>> segmentShift)][(int)(index & segmentMask)];
+	}
+
+	@Override
+	protected void rawSet(long index, byte value) {
+		if(index >= capacity){
+			grow(index+1);
+		}
+		segments[(int)(index >>> segmentShift)][(int)(index & segmentMask)] = value;
+	}
+	
+	@Override
+	protected long rawGetLong(long index) {
+		long offset = index & segmentMask;
+		if(offset + 8 > segmentMask + 1)
+			return super.rawGetLong(index);
+		return words[(int)(index >>> segmentShift)].getLong((int)offset);
 	}
 	
-	private void ensureCapacity(int toBytes){
-		byte[] newBytes = new byte[toBytes];
-		System.arraycopy(bytes,0,newBytes,0,bytes.length);
-		bytes = newBytes;
+	@Override
+	protected void rawSetLong(long index, long value) {
+		long offset = index & segmentMask;
+		if(offset + 8 > segmentMask + 1){
+			super.rawSetLong(index, value);
+			return;
+		}
+		words[(int)(index >>> segmentShift)].putLong((int)offset, value);
 	}
 
 	@Override
-	protected void rawSet(long index, byte value) {
-		if(index >= bytes.length){
-			ensureCapacity((int)index+1);
+	protected void rawGetBytes(long index, byte[] dst, int offset, int length) {
+		while(length > 0){
+			int segmentOffset = (int)(index & segmentMask);
+			byte[] segment = segments[(int)(index >>> segmentShift)];
+			int n = Math.min(length, segment.length - segmentOffset);
+			System.arraycopy(segment, segmentOffset, dst, offset, n);
+			index += n;
+			offset += n;
+			length -= n;
 		}
-		bytes[(int)index] = value;
+	}
+	
+	@Override
+	protected void rawSetBytes(long index, byte[] src, int offset, int length) {
+		if(index + length > capacity)
+			grow(index + length);
+		while(length > 0){
+			int segmentOffset = (int)(index & segmentMask);
+			byte[] segment = segments[(int)(index >>> segmentShift)];
+			int n = Math.min(length, segment.length - segmentOffset);
+			System.arraycopy(src, offset, segment, segmentOffset, n);
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+	
+	@Override
+	protected byte[] rawArray() {
+		return segments.length == 1 ? segments[0] : null;
 	}
 
 	@Override
 	protected long rawLength() {
-		return bytes.length;
+		return capacity;
 	}
 	
+	@Override
+	public BitBuffer ensureCapacity(long bits) {
+		long bytes = toBytes(bits);
+		if(bytes > capacity)
+			grow(bytes);
+		return this;
+	}
+	
+	@Override
+	public BitBuffer trimToSize() {
+		reallocate(toBytes(canRead() ? limit() : position()));
+		return this;
+	}
+	
+	private void grow(long toBytes){
+		reallocate(Math.max(toBytes, toBytes(policy.grow(capacity * 8, toBytes * 8))));
+	}
+	
+	private void reallocate(long newCapacity){
+		int count = (int) ((newCapacity + segmentMask) >>> segmentShift);
+		byte[][] newSegments = Arrays.copyOf(segments, count);
+		ByteBuffer[] newWords = Arrays.copyOf(words, count);
+		for(int i = 0; i < count; ++i){
+			int length = (int) Math.min(segmentMask + 1, newCapacity - ((long) i << segmentShift));
+			if(newSegments[i] == null){
+				newSegments[i] = new byte[length];
+			}else if(newSegments[i].length != length){
+				newSegments[i] = Arrays.copyOf(newSegments[i], length);
+			}else{
+				continue;
+			}
+			newWords[i] = ByteBuffer.wrap(newSegments[i]);
+		}
+		segments = newSegments;
+		words = newWords;
+		capacity = newCapacity;
+	}
 }
@@ -1,16 +1,36 @@
 package net.magik6k.bitbuffer;
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The BitBuffer, useful to store data in bit-aligned format
- * All multi-byte data structures are saved in Java byte order i.e. big endian
+ * By default bits are stored MSB-first and multi-byte data structures are saved in Java byte order i.e. big endian,
+ * both can be changed per buffer
+ * @see #bitOrder(BitOrder)
+ * @see #order(ByteOrder)
  * @see #allocate(long)
  * @see #allocateDirect(long)
  */
-public abstract class BitBuffer {
+public abstract class BitBuffer implements AutoCloseable {
 	protected abstract long rawLength();
 
 	/**
@@ -143,23 +163,177 @@ public abstract class BitBuffer {
 	 * @return This buffer
 	 */
 	public BitBuffer putString(String s){
-		for(byte ch : s.getBytes(StandardCharsets.UTF_8)){
-			putByte(ch);
-		}
-		return this;
+		return putString(s, StandardCharsets.UTF_8);
 	}
 	
 	/**
-	 * Puts {@link String} value
+	 * Puts {@link String} value. Malformed and unmappable characters are replaced,
+	 * as with {@link String#getBytes(Charset)}
 	 * @param s value to set
 	 * @param charset {@link Charset} to use
 	 * @return This buffer
 	 */
 	public BitBuffer putString(String s, Charset charset){
-		for(byte ch : s.getBytes(charset)){
-			putByte(ch);
+		return putString(s, 0, charset);
+	}
+	
+	/**
+	 * Puts characters of given string starting at given index
+	 */
+	BitBuffer putString(String s, int start, Charset charset){
+		StringCoding scratch = StringCoding.acquire();
+		try{
+			return encodeString(s, start, scratch.encoder(charset), scratch);
+		}catch(CharacterCodingException e){
+			throw new IllegalStateException("Replacing encoder reported an error", e);
+		}finally{
+			scratch.release();
 		}
-		return this;
+	}
+	
+	/**
+	 * Puts characters encoded with given encoder. When the position is byte aligned bytes are encoded
+	 * straight into the storage where possible, otherwise through a small chunk
+	 * @param s Characters to encode
+	 * @param encoder Encoder to use, it's reset before encoding
+	 * @return This buffer
+	 * @throws CharacterCodingException If the encoder reports malformed or unmappable input
+	 * @throws BufferOverflowException If the buffer is full, bytes encoded up to that point are kept
+	 * @throws ReadOnlyBufferException If the buffer is read-only
+	 */
+	public BitBuffer putString(CharSequence s, CharsetEncoder encoder) throws CharacterCodingException {
+		StringCoding scratch = StringCoding.acquire();
+		try{
+			return encodeString(s, 0, encoder, scratch);
+		}finally{
+			scratch.release();
+		}
+	}
+	
+	/**
+	 * Encodes characters starting at given index. Characters are copied to scratch chunk,
+	 * bytes are encoded into the storage or into another chunk
+	 */
+	private BitBuffer encodeString(CharSequence s, int next, CharsetEncoder encoder, StringCoding scratch) throws CharacterCodingException {
+		//Encoders can't report read-only output other than by failing
+		if(isReadOnly())
+			throw new ReadOnlyBufferException();
+		CharBuffer in = scratch.chars;
+		ByteBuffer chunk = scratch.bytes;
+		in.clear().flip();
+		encoder.reset();
+		boolean flush = false;
+		for(;;){
+			if(next < s.length()){
+				//Keep characters not consumed yet, such as high surrogate, fill the rest of the chunk
+				in.compact();
+				int n = Math.min(in.remaining(), s.length() - next);
+				copyChars(s, next, next + n, in.array(), in.position());
+				in.position(in.position() + n).flip();
+				next += n;
+			}
+			ByteBuffer out = (position() & 7) == 0 ? byteView(position() >>> 3, rawLength()) : null;
+			if(out == null){
+				chunk.clear();
+				out = chunk;
+			}
+			int start = out.position();
+			CoderResult result = flush ? encoder.flush(out) : encoder.encode(in, out, next == s.length());
+			if(out == chunk)
+				put(chunk.array(), 0, chunk.position());
+			else
+				setPosition(position() + (out.position() - start) * 8L);
+			if(result.isUnderflow()){
+				if(next < s.length())
+					continue;
+				if(flush)
+					return this;
+				flush = true;
+			}else if(result.isOverflow()){
+				if(out != chunk)
+					ensureCapacity((rawLength() + 1) * 8);
+			}else{
+				result.throwException();
+			}
+		}
+	}
+	
+	private static void copyChars(CharSequence s, int start, int end, char[] dst, int offset){
+		if(s instanceof String){
+			((String) s).getChars(start, end, dst, offset);
+		}else if(s instanceof StringBuilder){
+			((StringBuilder) s).getChars(start, end, dst, offset);
+		}else{
+			for(int i = start; i < end; ++i){
+				dst[offset++] = s.charAt(i);
+			}
+		}
+	}
+	
+	/**
+	 * Puts length of the encoded string in bytes followed by the string
+	 * @param s value to set
+	 * @param charset {@link Charset} to use
+	 * @param code Code used for the length
+	 * @return This buffer
+	 */
+	public BitBuffer putPrefixedString(String s, Charset charset, VarCode code){
+		long length = encodedLength(s, charset);
+		if(length >= 0){
+			put(length, code);
+			return putString(s, charset);
+		}
+		byte[] bytes = s.getBytes(charset);
+		put(bytes.length, code);
+		return put(bytes);
+	}
+	
+	/**
+	 * Puts UTF-8 encoded string prefixed with its length in bytes as {@link VarCode#VARINT}
+	 * @param s value to set
+	 * @return This buffer
+	 */
+	public BitBuffer putPrefixedString(String s){
+		return putPrefixedString(s, StandardCharsets.UTF_8, VarCode.VARINT);
+	}
+	
+	/**
+	 * @param charset {@link Charset} to check
+	 * @return Whether characters below 128 are encoded as single byte of the same value
+	 */
+	static boolean asciiCompatible(Charset charset){
+		return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+				|| charset.equals(StandardCharsets.ISO_8859_1);
+	}
+	
+	/**
+	 * @return Length of the string encoded with replacement of malformed input,
+	 * or -1 if it can't be computed without encoding the string
+	 */
+	private static long encodedLength(String s, Charset charset){
+		boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+		if(!utf8 && !asciiCompatible(charset))
+			return -1;
+		long length = 0;
+		for(int i = 0; i < s.length(); ++i){
+			char c = s.charAt(i);
+			if(c < 0x80){
+				++length;
+			}else if(!utf8){
+				return -1;
+			}else if(c < 0x800){
+				length += 2;
+			}else if(Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))){
+				length += 4;
+				++i;
+			}else if(Character.isSurrogate(c)){
+				//Replaced with '?'
+				++length;
+			}else{
+				length += 3;
+			}
+		}
+		return length;
 	}
 	
 	/**
@@ -280,13 +454,29 @@ public abstract class BitBuffer {
 	 * @return This buffer
 	 */
 	public BitBuffer put(BitBuffer buffer){
-		while(buffer.limit() - buffer.position() > 0){
-			if(buffer.limit() - buffer.position() < 8){
-				this.put(buffer.getBoolean());
-			}else{
-				this.put(buffer.getByte());
-			}
+		long position = buffer.position();
+		long length = buffer.limit() - position;
+		put(buffer, position, length);
+		buffer.setPosition(position + length);
+		return this;
+	}
+	
+	/**
+	 * Copies range of bits from given BitBuffer into this buffer.
+	 * Position of source buffer is not affected.
+	 * @param src Source buffer
+	 * @param srcBitOffset Index of the first bit to copy
+	 * @param bitLength Amount of bits to copy
+	 * @return This buffer
+	 */
+	public BitBuffer put(BitBuffer src, long srcBitOffset, long bitLength){
+		long srcPosition = src.position();
+		src.setPosition(srcBitOffset);
+		for(; bitLength >= 64; bitLength -= 64){
+			putLong(src.getLong());
 		}
+		putLong(src.getLongUnsigned((int) bitLength), (int) bitLength);
+		src.setPosition(srcPosition);
 		return this;
 	}
 	
@@ -296,7 +486,7 @@ public abstract class BitBuffer {
 	 * @return This buffer
 	 */
 	public BitBuffer put(ByteBuffer buffer){
-		while(buffer.remaining() > 1){
+		while(buffer.hasRemaining()){
 			this.put(buffer.get());
 		}
 		return this;
@@ -306,11 +496,11 @@ public abstract class BitBuffer {
 	 * Reads given array of booleans into this buffer
 	 * @param array The array
 	 * @param offset Starting offset
-	 * @param limit Last index
+	 * @param limit Last index, exclusive
 	 * @return This buffer
 	 */
 	public BitBuffer put(boolean[] array, int offset, int limit){
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			put(array[offset]);
 		}
 		return this;
@@ -330,11 +520,11 @@ public abstract class BitBuffer {
 	 * Reads given array of bytes into this buffer
 	 * @param array The array
 	 * @param offset Starting offset
-	 * @param limit Last index
+	 * @param limit Last index, exclusive
 	 * @return This buffer
 	 */
 	public BitBuffer put(byte[] array, int offset, int limit){
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			put(array[offset]);
 		}
 		return this;
@@ -354,11 +544,11 @@ public abstract class BitBuffer {
 	 * Reads given array of integers into this buffer
 	 * @param array The array
 	 * @param offset Starting offset
-	 * @param limit Last index
+	 * @param limit Last index, exclusive
 	 * @return This buffer
 	 */
 	public BitBuffer put(int[] array, int offset, int limit){
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			put(array[offset]);
 		}
 		return this;
@@ -378,11 +568,11 @@ public abstract class BitBuffer {
 	 * Reads given array of longs into this buffer
 	 * @param array The array
 	 * @param offset Starting offset
-	 * @param limit Last index
+	 * @param limit Last index, exclusive
 	 * @return This buffer
 	 */
 	public BitBuffer put(long[] array, int offset, int limit){
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			put(array[offset]);
 		}
 		return this;
@@ -402,12 +592,12 @@ public abstract class BitBuffer {
 	 * Reads given array of bytes into this buffer
 	 * @param array The array
 	 * @param offset Starting offset
-	 * @param limit Last index
+	 * @param limit Last index, exclusive
 	 * @param bits Bits per byte
 	 * @return This buffer
 	 */
 	public BitBuffer put(byte[] array, int offset, int limit, int bits){
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			put(array[offset], bits);
 		}
 		return this;
@@ -428,12 +618,12 @@ public abstract class BitBuffer {
 	 * Reads given array of integers into this buffer
 	 * @param array The array
 	 * @param offset Starting offset
-	 * @param limit Last index
+	 * @param limit Last index, exclusive
 	 * @param bits Bits per integer
 	 * @return This buffer
 	 */
 	public BitBuffer put(int[] array, int offset, int limit, int bits){
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			put(array[offset], bits);
 		}
 		return this;
@@ -454,12 +644,12 @@ public abstract class BitBuffer {
 	 * Reads given array of longs into this buffer
 	 * @param array The array
 	 * @param offset Starting offset
-	 * @param limit Last index
+	 * @param limit Last index, exclusive
 	 * @param bits Bits per long
 	 * @return This buffer
 	 */
 	public BitBuffer put(long[] array, int offset, int limit, int bits){
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			put(array[offset], bits);
 		}
 		return this;
@@ -476,6 +666,124 @@ public abstract class BitBuffer {
 		return this;
 	}
 	
+	/**
+	 * Puts value encoded with given variable length code
+	 * @param value Value to encode
+	 * @param code Code to use
+	 * @return This buffer
+	 */
+	public BitBuffer put(long value, VarCode code){
+		code.encode(this, value);
+		return this;
+	}
+	
+	/**
+	 * Puts values from array, each encoded with given variable length code
+	 * @param array The array
+	 * @param offset Starting offset
+	 * @param limit Last index, exclusive
+	 * @param code Code to use
+	 * @return This buffer
+	 */
+	public BitBuffer put(long[] array, int offset, int limit, VarCode code){
+		code.encode(this, array, offset, limit);
+		return this;
+	}
+	
+	/**
+	 * Puts whole given array into this buffer, each value encoded with given variable length code
+	 * @param array The array
+	 * @param code Code to use
+	 * @return This buffer
+	 */
+	public BitBuffer put(long[] array, VarCode code) {
+		return put(array, 0, array.length, code);
+	}
+	
+	/**
+	 * Puts code of given symbol
+	 * @param symbol Symbol to encode
+	 * @param code Code to use
+	 * @return This buffer
+	 */
+	public BitBuffer put(int symbol, HuffmanCode code){
+		code.encode(this, symbol);
+		return this;
+	}
+	
+	/**
+	 * Puts codes of symbols from array
+	 * @param symbols The array
+	 * @param offset Starting offset
+	 * @param limit Last index, exclusive
+	 * @param code Code to use
+	 * @return This buffer
+	 */
+	public BitBuffer put(int[] symbols, int offset, int limit, HuffmanCode code){
+		code.encode(this, symbols, offset, limit);
+		return this;
+	}
+	
+	/**
+	 * Puts codes of all symbols from given array
+	 * @param symbols The array
+	 * @param code Code to use
+	 * @return This buffer
+	 */
+	public BitBuffer put(int[] symbols, HuffmanCode code) {
+		return put(symbols, 0, symbols.length, code);
+	}
+	
+	/**
+	 * Puts values of given width, packing is split between threads of given pool.
+	 * Result is the same as of {@link #put(int[], int, int, int)}
+	 * @param array The array
+	 * @param offset Starting offset
+	 * @param limit Last index, exclusive
+	 * @param bits Bits per integer
+	 * @param pool Pool to run on, null for default pool
+	 * @return This buffer
+	 */
+	public BitBuffer putParallel(int[] array, int offset, int limit, int bits, ForkJoinPool pool){
+		return put(array, offset, limit, bits);
+	}
+	
+	/**
+	 * Puts whole given array into this buffer, packing is split between threads of default pool
+	 * (common pool)
+	 * @param array The array
+	 * @param bits Bits per integer
+	 * @return This buffer
+	 */
+	public BitBuffer putParallel(int[] array, int bits){
+		return putParallel(array, 0, array.length, bits, null);
+	}
+	
+	/**
+	 * Puts values of given width, packing is split between threads of given pool.
+	 * Result is the same as of {@link #put(long[], int, int, int)}
+	 * @param array The array
+	 * @param offset Starting offset
+	 * @param limit Last index, exclusive
+	 * @param bits Bits per long
+	 * @param pool Pool to run on, null for default pool
+	 * @return This buffer
+	 */
+	public BitBuffer putParallel(long[] array, int offset, int limit, int bits, ForkJoinPool pool){
+		return put(array, offset, limit, bits);
+	}
+	
+	/**
+	 * Puts whole given array into this buffer, packing is split between threads of default pool
+	 * (common pool)
+	 * @param array The array
+	 * @param bits Bits per long
+	 * @return This buffer
+	 */
+	public BitBuffer putParallel(long[] array, int bits){
+		return putParallel(array, 0, array.length, bits, null);
+	}
+	
 	/**
 	 * Inserts given data into buffer
 	 * @param data Instance of class implementing {@link IBufferInsert}
@@ -625,11 +933,7 @@ public abstract class BitBuffer {
 	 * @return String of given length, with 8-bit wide characters, using UTF-8 encoding
 	 */
 	public String getString(int length){
-		byte[] bytes = new byte[length];
-		for(int i = 0; i < length; ++i){
-			bytes[i] = getByte();
-		}
-		return new String(bytes, StandardCharsets.UTF_8);
+		return getString(length, StandardCharsets.UTF_8);
 	}
 	
 	/**
@@ -638,11 +942,136 @@ public abstract class BitBuffer {
 	 * @return String of given length, with 8-bit wide characters, using UTF-8 encoding
 	 */
 	public String getString(int length, Charset charset){
-		byte[] bytes = new byte[length];
-		for(int i = 0; i < length; ++i){
-			bytes[i] = getByte();
+		return new String(get(new byte[length]), charset);
+	}
+	
+	/**
+	 * Decodes string of given length into given buffer. When the position is byte aligned bytes are decoded
+	 * straight from the storage where possible, otherwise through a small chunk
+	 * @param length Length of the string in bytes
+	 * @param decoder Decoder to use, it's reset before decoding
+	 * @param dst Buffer to put decoded characters to
+	 * @return Given buffer
+	 * @throws CharacterCodingException If the decoder reports malformed or unmappable input, positions of both buffers are left unchanged
+	 * @throws BufferOverflowException If dst is too small, positions of both buffers are left unchanged
+	 */
+	public CharBuffer getString(int length, CharsetDecoder decoder, CharBuffer dst) throws CharacterCodingException {
+		long position = position();
+		int mark = dst.position();
+		boolean decoded = false;
+		StringCoding scratch = StringCoding.acquire();
+		try{
+			decoded = decodeString(length, decoder, dst, null, scratch);
+		}finally{
+			scratch.release();
+			if(!decoded){
+				setPosition(position);
+				dst.position(mark);
+			}
 		}
-		return new String(bytes, charset);
+		if(!decoded)
+			throw new BufferOverflowException();
+		return dst;
+	}
+	
+	/**
+	 * Decodes string of given length, appending it to given builder
+	 * @param length Length of the string in bytes
+	 * @param decoder Decoder to use, it's reset before decoding
+	 * @param dst Builder to append decoded characters to
+	 * @return Given builder
+	 * @throws CharacterCodingException If the decoder reports malformed or unmappable input,
+	 * the position and the builder are left unchanged
+	 */
+	public StringBuilder getString(int length, CharsetDecoder decoder, StringBuilder dst) throws CharacterCodingException {
+		long position = position();
+		int mark = dst.length();
+		boolean decoded = false;
+		StringCoding scratch = StringCoding.acquire();
+		try{
+			CharBuffer chars = scratch.chars;
+			chars.clear();
+			decodeString(length, decoder, chars, dst, scratch);
+			chars.flip();
+			dst.append(chars);
+			decoded = true;
+		}finally{
+			scratch.release();
+			if(!decoded){
+				setPosition(position);
+				dst.setLength(mark);
+			}
+		}
+		return dst;
+	}
+	
+	/**
+	 * Decodes bytes at the position, full dst is emptied into builder if there's one
+	 * @return Whether all bytes were decoded, false if dst filled up with no builder
+	 */
+	private boolean decodeString(int length, CharsetDecoder decoder, CharBuffer dst, StringBuilder builder, StringCoding scratch) throws CharacterCodingException {
+		if(length < 0)
+			throw new IllegalArgumentException("Negative length: " + length);
+		if(position() + length * 8L > limit())
+			throw new BufferUnderflowException();
+		decoder.reset();
+		int left = length;
+		ByteBuffer in = (position() & 7) == 0 ? byteView(position() >>> 3, (position() >>> 3) + length) : null;
+		if(in != null){
+			setPosition(position() + length * 8L);
+			left = 0;
+		}else{
+			in = scratch.bytes;
+			in.clear().flip();
+		}
+		boolean flush = false;
+		for(;;){
+			if(left > 0){
+				//Keep bytes of incomplete character, fill the rest of the chunk
+				in.compact();
+				int n = Math.min(left, in.remaining());
+				get(in.array(), in.position(), in.position() + n);
+				in.position(in.position() + n).flip();
+				left -= n;
+			}
+			CoderResult result = flush ? decoder.flush(dst) : decoder.decode(in, dst, left == 0);
+			if(result.isUnderflow()){
+				if(left > 0)
+					continue;
+				if(flush)
+					return true;
+				flush = true;
+			}else if(result.isOverflow()){
+				if(builder == null)
+					return false;
+				dst.flip();
+				builder.append(dst);
+				dst.clear();
+			}else{
+				result.throwException();
+			}
+		}
+	}
+	
+	/**
+	 * Reads string prefixed with its length in bytes
+	 * @param charset {@link Charset} to use for decoding
+	 * @param code Code used for the length
+	 * @return String read
+	 */
+	public String getPrefixedString(Charset charset, VarCode code){
+		long length = getLong(code);
+		if(length < 0 || length > Integer.MAX_VALUE)
+			throw new IllegalStateException("Invalid string length: " + length);
+		return getString((int) length, charset);
+	}
+	
+	/**
+	 * Reads UTF-8 encoded string prefixed with its length in bytes as {@link VarCode#VARINT}
+	 * @return String read
+	 */
+	public String getPrefixedString(){
+		return getPrefixedString(StandardCharsets.UTF_8, VarCode.VARINT);
 	}
 	
 	/**
@@ -676,11 +1105,11 @@ public abstract class BitBuffer {
 	 * Reads data into specified array
 	 * @param dst Array to write data to
 	 * @param offset Starting offset of array
-	 * @param limit Last offset in array
+	 * @param limit Last offset in array, exclusive
 	 * @return Given array
 	 */
 	public boolean[] get(boolean[] dst, int offset, int limit) {
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			dst[offset] = getBoolean();
 		}
 		return dst;
@@ -699,11 +1128,11 @@ public abstract class BitBuffer {
 	 * Reads data into specified array
 	 * @param dst Array to write data to
 	 * @param offset Starting offset of array
-	 * @param limit Last offset in array
+	 * @param limit Last offset in array, exclusive
 	 * @return Given array
 	 */
 	public byte[] get(byte[] dst, int offset, int limit) {
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			dst[offset] = getByte();
 		}
 		return dst;
@@ -722,11 +1151,11 @@ public abstract class BitBuffer {
 	 * Reads data into specified array
 	 * @param dst Array to write data to
 	 * @param offset Starting offset of array
-	 * @param limit Last offset in array
+	 * @param limit Last offset in array, exclusive
 	 * @return Given array
 	 */
 	public int[] get(int[] dst, int offset, int limit) {
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			dst[offset] = getInt();
 		}
 		return dst;
@@ -745,11 +1174,11 @@ public abstract class BitBuffer {
 	 * Reads data into specified array
 	 * @param dst Array to write data to
 	 * @param offset Starting offset of array
-	 * @param limit Last offset in array
+	 * @param limit Last offset in array, exclusive
 	 * @return Given array
 	 */
 	public long[] get(long[] dst, int offset, int limit) {
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			dst[offset] = getLong();
 		}
 		return dst;
@@ -768,12 +1197,12 @@ public abstract class BitBuffer {
 	 * Reads data into specified array
 	 * @param dst Array to write data to
 	 * @param offset Starting offset of array
-	 * @param limit Last offset in array
+	 * @param limit Last offset in array, exclusive
 	 * @param bits Bits per byte
 	 * @return Given array
 	 */
 	public byte[] get(byte[] dst, int offset, int limit, int bits) {
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			dst[offset] = getByte(bits);
 		}
 		return dst;
@@ -793,12 +1222,12 @@ public abstract class BitBuffer {
 	 * Reads data into specified array
 	 * @param dst Array to write data to
 	 * @param offset Starting offset of array
-	 * @param limit Last offset in array
+	 * @param limit Last offset in array, exclusive
 	 * @param bits Bits per integer
 	 * @return Given array
 	 */
 	public int[] get(int[] dst, int offset, int limit, int bits) {
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			dst[offset] = getInt(bits);
 		}
 		return dst;
@@ -818,12 +1247,12 @@ public abstract class BitBuffer {
 	 * Reads data into specified array
 	 * @param dst Array to write data to
 	 * @param offset Starting offset of array
-	 * @param limit Last offset in array
+	 * @param limit Last offset in array, exclusive
 	 * @param bits Bits per long
 	 * @return Given array
 	 */
 	public long[] get(long[] dst, int offset, int limit, int bits) {
-		for(; offset > limit; ++offset) {
+		for(; offset < limit; ++offset) {
 			dst[offset] = getLong(bits);
 		}
 		return dst;
@@ -840,132 +1269,992 @@ public abstract class BitBuffer {
 	}
 	
 	/**
-	 * Toggles the buffer betwen read/write modes. 
-	 * Limit is set at current position, and cursor is set at position 0
-	 * @return This BitBuffer
+	 * Reads data into specified array, unpacking is split between threads of given pool.
+	 * Result is the same as of {@link #get(int[], int, int, int)}
+	 * @param dst Array to write data to
+	 * @param offset Starting offset of array
+	 * @param limit Last offset in array, exclusive
+	 * @param bits Bits per integer
+	 * @param pool Pool to run on, null for default pool
+	 * @return Given array
 	 */
-	public abstract BitBuffer flip();
+	public int[] getParallel(int[] dst, int offset, int limit, int bits, ForkJoinPool pool) {
+		return get(dst, offset, limit, bits);
+	}
 	
 	/**
-	 * @return Boolean value telling if the buffer can output data
+	 * Reads data into given array, unpacking is split between threads of default pool
+	 * (common pool)
+	 * @param dst Array to write data to
+	 * @param bits Bits per integer
+	 * @return Given array
 	 */
-	public abstract boolean canRead();
+	public int[] getParallel(int[] dst, int bits) {
+		return getParallel(dst, 0, dst.length, bits, null);
+	}
 	
 	/**
-	 * @return Boolean value telling if the buffer can accept data
+	 * Reads data into specified array, unpacking is split between threads of given pool.
+	 * Result is the same as of {@link #get(long[], int, int, int)}
+	 * @param dst Array to write data to
+	 * @param offset Starting offset of array
+	 * @param limit Last offset in array, exclusive
+	 * @param bits Bits per long
+	 * @param pool Pool to run on, null for default pool
+	 * @return Given array
 	 */
-	public abstract boolean canWrite();
+	public long[] getParallel(long[] dst, int offset, int limit, int bits, ForkJoinPool pool) {
+		return get(dst, offset, limit, bits);
+	}
 	
 	/**
-	 * This method returns representation of this bufer as
-	 * array of bytes. note that missing bits will be set to 0.
-	 * This method shouldn't affect the position.
-	 * @return This BitBuffer represented as byte array
+	 * Reads data into given array, unpacking is split between threads of default pool
+	 * (common pool)
+	 * @param dst Array to write data to
+	 * @param bits Bits per long
+	 * @return Given array
 	 */
-	public byte[] asByteArray(){
-
-		long startPos = position();
-		boolean reflip = false;
-		if(!canRead()){
-			flip();
-			reflip = true;
-		}
-		setPosition(0);
-		byte[] result = new byte[(int) rawLength()];
-		for(int i = 0; i*8 < limit(); ++i){
-			result[i] = getByte();
-		}
-		if(reflip)
-			flip();
-		setPosition(startPos);
-		
-		return result;
+	public long[] getParallel(long[] dst, int bits) {
+		return getParallel(dst, 0, dst.length, bits, null);
 	}
 	
 	/**
-	 * This method returns representation of this bufer as
-	 * ByteBuffer. note that missing bits will be set to 0.
-	 * This method shouldn't affect the position.
-	 * @return ByteBuffer version of this class
+	 * @param code Code to use
+	 * @return Value encoded with given variable length code
 	 */
-	public ByteBuffer asByteBuffer(){
-		return ByteBuffer.wrap(asByteArray());
+	public long getLong(VarCode code){
+		return code.decode(this);
 	}
 	
 	/**
-	 * Puts this BitBuffer into ByteBuffer
-	 * @param bb ByteBuffer to put data to
-	 * @return This buffer
+	 * Reads values encoded with given variable length code into specified array
+	 * @param dst Array to write data to
+	 * @param offset Starting offset of array
+	 * @param limit Last offset in array, exclusive
+	 * @param code Code to use
+	 * @return Given array
 	 */
-	public BitBuffer putToByteBuffer(ByteBuffer bb){
-		bb.put(asByteArray());
-		return this;
+	public long[] get(long[] dst, int offset, int limit, VarCode code) {
+		code.decode(this, dst, offset, limit);
+		return dst;
 	}
 	
 	/**
-	 * This function returns size of this buffer, in bits
-	 * @return Size of this buffer, in bits
+	 * Reads values encoded with given variable length code into given array
+	 * @param dst Array to write data to
+	 * @param code Code to use
+	 * @return Given array
 	 */
-	public abstract long size();
+	public long[] get(long[] dst, VarCode code) {
+		return get(dst, 0, dst.length, code);
+	}
 	
 	/**
-	 * This function returns Virtual 'end' of this buffer, in bits
-	 * @return Virtual 'end' of this buffer, in bits
+	 * @param code Code to use
+	 * @return Symbol decoded with given Huffman code
 	 */
-	public abstract long limit();
+	public int getInt(HuffmanCode code){
+		return code.decode(this);
+	}
 	
 	/**
-	 * This function returns current position of cursor, in bits
-	 * @return Current position of cursor, in bits
+	 * Reads symbols decoded with given Huffman code into specified array
+	 * @param dst Array to write symbols to
+	 * @param offset Starting offset of array
+	 * @param limit Last offset in array, exclusive
+	 * @param code Code to use
+	 * @return Given array
 	 */
-	public abstract long position();
+	public int[] get(int[] dst, int offset, int limit, HuffmanCode code) {
+		code.decode(this, dst, offset, limit);
+		return dst;
+	}
 	
 	/**
-	 * Sets cursor position for this buffer
-	 * @param newPosition position to set
-	 * @return This buffer
+	 * Reads symbols decoded with given Huffman code into given array
+	 * @param dst Array to write symbols to
+	 * @param code Code to use
+	 * @return Given array
 	 */
-	public abstract BitBuffer setPosition(long newPosition);
+	public int[] get(int[] dst, HuffmanCode code) {
+		return get(dst, 0, dst.length, code);
+	}
 	
 	/**
-	 * Allocates new BitBuffer.
-	 * First bit is MSB of byte 0.
-	 * @param bits Amount of bits to allocate
-	 * @return Newly created instance of BitBuffer
+	 * Reads given amount of bits without moving the position. Bits past the limit read as 0,
+	 * as if the buffer was padded with zeros
+	 * @param bits Amount of bits, 0-64
+	 * @return Value the same as {@link #getLongUnsigned(int)} would return
 	 */
-	public static BitBuffer allocate(long bits){
-		return new ArrayBitBuffer(bits);
+	public long peekBits(int bits){
+		long position = position();
+		int available = (int) Math.min(bits, limit() - position);
+		if(available <= 0)
+			return 0;
+		long value = getLongUnsigned(available);
+		setPosition(position);
+		return bitOrder() == BitOrder.MSB_FIRST ? value << (bits - available) : value;
 	}
 	
 	/**
-	 * Allocates new 'direct' BitBuffer. This buffer is allocated using off-heap, native memory.
-	 * This solution MAY be faster, however you may notice way slower allocation. 
-	 * @param bits Amount of bits to allocate
-	 * @return Newly created instance of BitBuffer
+	 * Moves the position forward
+	 * @param bits Amount of bits to skip
+	 * @return This buffer
 	 */
-	public static BitBuffer allocateDirect(long bits){
-		return new DirectBitBuffer(bits);
+	public BitBuffer skipBits(long bits){
+		long position = position() + bits;
+		if(bits < 0 || position > limit())
+			throw new BufferUnderflowException();
+		return setPosition(position);
 	}
 	
 	/**
-	 * Creates new auto-extending BitBuffer.
-	 * Limit of this buffer in write mode has no real meaning.
-	 * @return Newly created instance of BitBuffer
+	 * Reads single bit at given index, cursor is not affected
+	 * @param bitIndex Index of the bit
+	 * @return Binary value of the bit
 	 */
-	public static BitBuffer allocateDynamic(){
-		return new AutomaticBitBuffer();
+	public boolean getBoolean(long bitIndex){
+		checkIndex(bitIndex, 1);
+		long position = position();
+		setPosition(bitIndex);
+		boolean result = getBoolean();
+		setPosition(position);
+		return result;
 	}
 	
 	/**
-	 * Creates new auto-extending BitBuffer with pre-allocated space.
-	 * Limit of this buffer in write mode has no real meaning.
-	 * @param preallocateBits Amount of space to pre-allocate, in bits
-	 * @return Newly created instance of BitBuffer
-	 */
+	 * Reads integer at given index, cursor is not affected
+	 * @param bitIndex Index of the first bit
+	 * @param bits Length of integer
+	 * @return Signed integer value of given bit width
+	 */
+	public int getInt(long bitIndex, int bits){
+		return (int) getLong(bitIndex, bits);
+	}
+	
+	/**
+	 * Reads integer at given index, cursor is not affected
+	 * @param bitIndex Index of the first bit
+	 * @param bits Length of integer
+	 * @return Unsigned integer value of given bit width
+	 */
+	public int getIntUnsigned(long bitIndex, int bits){
+		return (int) getLongUnsigned(bitIndex, bits);
+	}
+	
+	/**
+	 * Reads long integer at given index, cursor is not affected
+	 * @param bitIndex Index of the first bit
+	 * @param bits Length of long integer
+	 * @return Signed long value of given bit width
+	 */
+	public long getLong(long bitIndex, int bits){
+		if(bits == 0)return 0;
+		long l = getLongUnsigned(bitIndex, bits);
+		return (l << (64 - bits)) >> (64 - bits);
+	}
+	
+	/**
+	 * Reads long integer at given index, cursor is not affected
+	 * @param bitIndex Index of the first bit
+	 * @param bits Length of long integer
+	 * @return Unsigned long value of given bit width
+	 */
+	public long getLongUnsigned(long bitIndex, int bits){
+		checkIndex(bitIndex, bits);
+		long position = position();
+		setPosition(bitIndex);
+		long result = getLongUnsigned(bits);
+		setPosition(position);
+		return result;
+	}
+	
+	/**
+	 * Writes single bit at given index, cursor is not affected
+	 * @param bitIndex Index of the bit
+	 * @param b value to set
+	 * @return This buffer
+	 */
+	public BitBuffer putBoolean(long bitIndex, boolean b){
+		checkIndex(bitIndex, 1);
+		long position = position();
+		setPosition(bitIndex);
+		putBoolean(b);
+		setPosition(position);
+		return this;
+	}
+	
+	/**
+	 * Writes integer at given index, cursor is not affected. Note that this
+	 * method can be used with both signed and unsigned data.
+	 * @param bitIndex Index of the first bit
+	 * @param value value to set
+	 * @param bits Number of bits to use
+	 * @return This buffer
+	 */
+	public BitBuffer putInt(long bitIndex, int value, int bits){
+		return putLong(bitIndex, value, bits);
+	}
+	
+	/**
+	 * Writes long integer at given index, cursor is not affected. Note that this
+	 * method can be used with both signed and unsigned data.
+	 * @param bitIndex Index of the first bit
+	 * @param value value to set
+	 * @param bits Number of bits to use
+	 * @return This buffer
+	 */
+	public BitBuffer putLong(long bitIndex, long value, int bits){
+		checkIndex(bitIndex, bits);
+		long position = position();
+		setPosition(bitIndex);
+		putLong(value, bits);
+		setPosition(position);
+		return this;
+	}
+	
+	/**
+	 * Checks whether given range lies within storage of this buffer
+	 * @param bitIndex Index of the first bit
+	 * @param bits Length of the range
+	 */
+	protected void checkIndex(long bitIndex, int bits){
+		if(bitIndex < 0 || bits < 0 || bitIndex + bits > size())
+			throw new IndexOutOfBoundsException("Index: " + bitIndex + ", bits: " + bits + ", size: " + size());
+	}
+	
+	/**
+	 * Exposes range of storage bytes, used to encode and decode strings in place
+	 * @param start Index of first byte
+	 * @param end Index of last byte, exclusive
+	 * @return ByteBuffer positioned at the range, or null if storage can't be exposed
+	 */
+	ByteBuffer byteView(long start, long end){
+		return null;
+	}
+	
+	/**
+	 * Reads up to 64 bits at the position, cursor is not affected
+	 * @return Next bits aligned to MSB, bits past the limit read as 0
+	 */
+	long peekWindow(){
+		long position = position();
+		int bits = (int) Math.min(64, limit() - position);
+		if(bits <= 0)
+			return 0;
+		long window = getStreamBits(bits) << (64 - bits);
+		setPosition(position);
+		return window;
+	}
+	
+	/**
+	 * Reads run of 0 bits and the 1 bit terminating it
+	 * @return Length of the run
+	 */
+	long getZeroRun(){
+		long run = 0;
+		for(;;){
+			if(position() >= limit())
+				throw new BufferUnderflowException();
+			if(getBoolean())
+				return run;
+			++run;
+		}
+	}
+	
+	/**
+	 * Reads value at given bit index in stream order, first bit read is the most significant bit of the result
+	 * @param index Bit index
+	 * @param bits Width of the value, 0-64
+	 * @return Unsigned value
+	 */
+	long getStreamBits(long index, int bits){
+		return bits == 0 ? 0 : bitOrder().toStream(getLongUnsigned(index, bits), bits);
+	}
+	
+	/**
+	 * Reads value at the position in stream order, first bit read is the most significant bit of the result
+	 * @param bits Width of the value, 0-64
+	 * @return Unsigned value
+	 */
+	long getStreamBits(int bits){
+		return bits == 0 ? 0 : bitOrder().toStream(getLongUnsigned(bits), bits);
+	}
+	
+	/**
+	 * Writes value at given bit index in stream order, most significant bit of the value is written first
+	 * @param index Bit index
+	 * @param value Value to write
+	 * @param bits Width of the value, 0-64
+	 */
+	void putStreamBits(long index, long value, int bits){
+		if(bits > 0)
+			putLong(index, bitOrder().toStream(value, bits), bits);
+	}
+	
+	/**
+	 * Writes value at the position in stream order, most significant bit of the value is written first
+	 * @param value Value to write
+	 * @param bits Width of the value, 0-64
+	 */
+	void putStreamBits(long value, int bits){
+		if(bits > 0)
+			putLong(bitOrder().toStream(value, bits), bits);
+	}
+	
+	/**
+	 * @return Order of bits in this buffer
+	 */
+	public abstract BitOrder bitOrder();
+	
+	/**
+	 * Sets order of bits in this buffer. Bit order decides which bit of a byte is first in the buffer and
+	 * which bit of a value is written first, so that for {@link BitOrder#LSB_FIRST} value written with
+	 * {@link #putInt(int, int)} occupies the same bits as in DEFLATE-style streams. Bit indexes,
+	 * position and limit are interpreted in the new order, content is not changed.
+	 * Byte order is reset to {@link BitOrder#naturalByteOrder()} of the new order
+	 * @param order New bit order
+	 * @return This buffer
+	 */
+	public abstract BitBuffer bitOrder(BitOrder order);
+	
+	/**
+	 * @return Byte order of full width multi-byte values in this buffer
+	 */
+	public abstract ByteOrder order();
+	
+	/**
+	 * Sets byte order of full width values written and read with {@link #putInt(int)}, {@link #getLong()},
+	 * {@link #putDouble(double)} and similar methods. Values of explicit bit width are not affected
+	 * @param order New byte order
+	 * @return This buffer
+	 */
+	public abstract BitBuffer order(ByteOrder order);
+	
+	/**
+	 * Creates new buffer sharing given bit range of this buffer's storage.
+	 * Changes to the content are visible in both buffers, position, limit and mode are independent.
+	 * New buffer is in the same mode as this one, its position is 0 and limit equals bitLength
+	 * @param bitOffset First bit of the range
+	 * @param bitLength Length of the range in bits
+	 * @return New buffer
+	 */
+	public abstract BitBuffer slice(long bitOffset, long bitLength);
+	
+	/**
+	 * Creates new buffer sharing whole storage of this buffer.
+	 * Changes to the content are visible in both buffers, position, limit and mode
+	 * are copied from this buffer, but are independent afterwards
+	 * @return New buffer
+	 */
+	public abstract BitBuffer duplicate();
+	
+	/**
+	 * Creates read-only duplicate of this buffer. Writes to the returned buffer
+	 * throw {@link java.nio.ReadOnlyBufferException}
+	 * @see #duplicate()
+	 * @return New buffer
+	 */
+	public abstract BitBuffer asReadOnlyBuffer();
+	
+	/**
+	 * @return Whether this buffer rejects writes
+	 */
+	public boolean isReadOnly(){
+		return false;
+	}
+	
+	/**
+	 * Toggles the buffer betwen read/write modes. 
+	 * Limit is set at current position, and cursor is set at position 0
+	 * @return This BitBuffer
+	 */
+	public abstract BitBuffer flip();
+	
+	/**
+	 * Puts the buffer into write mode with cursor at position 0, so that it
+	 * can be reused. Contents of the buffer are not changed.
+	 * @return This BitBuffer
+	 */
+	public BitBuffer clear(){
+		if(canRead())
+			flip();
+		setPosition(0);
+		return this;
+	}
+	
+	/**
+	 * @return Boolean value telling if the buffer can output data
+	 */
+	public abstract boolean canRead();
+	
+	/**
+	 * @return Boolean value telling if the buffer can accept data
+	 */
+	public abstract boolean canWrite();
+	
+	/**
+	 * This method returns representation of this bufer as
+	 * array of bytes. note that missing bits will be set to 0.
+	 * This method shouldn't affect the position.
+	 * @return This BitBuffer represented as byte array
+	 */
+	public byte[] asByteArray(){
+		long end = canRead() ? limit() : position();
+		byte[] result = new byte[(int) rawLength()];
+		for(int i = 0; i*8L < end; ++i){
+			//Last byte may be partial, its missing bits are 0
+			int bits = (int) Math.min(8, end - i*8L);
+			int value = getIntUnsigned(i*8L, bits);
+			result[i] = (byte) (bitOrder() == BitOrder.LSB_FIRST ? value : value << (8 - bits));
+		}
+		return result;
+	}
+	
+	/**
+	 * This method returns representation of this bufer as
+	 * ByteBuffer. This method shouldn't affect the position.
+	 * When the storage of this buffer allows it, returned ByteBuffer
+	 * is a view sharing storage bytes up to the limit, so changes made through either
+	 * buffer are visible in both. The view exposes the storage as it is, including
+	 * bits past the position and unused bits of partial last byte.
+	 * Otherwise it wraps {@link #asByteArray()}, with missing bits set to 0.
+	 * Native memory of 'direct' buffers is freed independently of ByteBuffers, so they get a copy.
+	 * @return ByteBuffer version of this class
+	 */
+	public ByteBuffer asByteBuffer(){
+		return ByteBuffer.wrap(asByteArray());
+	}
+	
+	/**
+	 * Writes bytes between position and limit of this buffer to given channel,
+	 * like {@link WritableByteChannel#write(ByteBuffer)} would. Bytes are written
+	 * directly from the storage when possible. Position has to be byte aligned,
+	 * partial last byte is written whole.
+	 * @param channel Channel to write to
+	 * @return Amount of bytes written
+	 * @throws IOException If channel fails
+	 */
+	public int writeTo(WritableByteChannel channel) throws IOException{
+		if(position() % 8 != 0)
+			throw new IllegalStateException("Position is not byte aligned");
+		int written = 0;
+		ByteBuffer single = ByteBuffer.allocate(1);
+		while(position() < limit()){
+			single.clear();
+			int bits = (int) Math.min(8, limit() - position());
+			single.put(0, (byte) (getByteUnsigned(bits) << (8 - bits)));
+			if(channel.write(single) < 1)
+				break;
+			++written;
+		}
+		return written;
+	}
+	
+	/**
+	 * Reads bytes from given channel into this buffer, until limit is reached
+	 * or channel has no more data, like {@link ReadableByteChannel#read(ByteBuffer)}
+	 * would. Bytes are read directly into the storage when possible. Position has to
+	 * be byte aligned.
+	 * @param channel Channel to read from
+	 * @return Amount of bytes read, or -1 if channel reached end of stream
+	 * @throws IOException If channel fails
+	 */
+	public int readFrom(ReadableByteChannel channel) throws IOException{
+		if(position() % 8 != 0)
+			throw new IllegalStateException("Position is not byte aligned");
+		int read = 0;
+		ByteBuffer single = ByteBuffer.allocate(1);
+		while(limit() - position() >= 8){
+			single.clear();
+			int r = channel.read(single);
+			if(r <= 0)
+				return read == 0 ? r : read;
+			putByte(single.get(0));
+			++read;
+		}
+		return read;
+	}
+	
+	/**
+	 * Writes bytes of given bit range to given file channel without blocking. Bytes are written
+	 * directly from the storage when possible. Range has to start at byte boundary, partial
+	 * last byte is written whole. Cursor is not affected, range shouldn't be modified until
+	 * returned future completes
+	 * @param channel Channel to write to
+	 * @param filePosition Position in the file to write first byte at
+	 * @param bitIndex First bit of the range
+	 * @param bitLength Length of the range in bits
+	 * @return Future completed with amount of bytes written, or exceptionally if the channel fails
+	 */
+	public abstract CompletableFuture<Integer> writeTo(AsynchronousFileChannel channel, long filePosition, long bitIndex, long bitLength);
+	
+	/**
+	 * Reads bytes from given file channel into given bit range without blocking, until the range
+	 * is filled or end of file is reached. Bytes are read directly into the storage when possible.
+	 * Range has to start at byte boundary, partial last byte is read whole. Cursor is not affected,
+	 * range shouldn't be accessed until returned future completes
+	 * @param channel Channel to read from
+	 * @param filePosition Position in the file to read first byte from
+	 * @param bitIndex First bit of the range
+	 * @param bitLength Length of the range in bits
+	 * @return Future completed with amount of bytes read or -1 if the position is at the end of file,
+	 * or exceptionally if the channel fails
+	 */
+	public abstract CompletableFuture<Integer> readFrom(AsynchronousFileChannel channel, long filePosition, long bitIndex, long bitLength);
+	
+	/**
+	 * This method returns representation of this buffer as
+	 * {@link BitSet}. Bit n of this buffer is bit n of the set.
+	 * This method shouldn't affect the position.
+	 * @return BitSet version of this buffer
+	 */
+	public BitSet asBitSet(){
+		byte[] bytes = asByteArray();
+		if(bitOrder() != BitOrder.MSB_FIRST)
+			return BitSet.valueOf(bytes);
+		for(int i = 0; i < bytes.length; ++i){
+			bytes[i] = (byte) (Integer.reverse(bytes[i]) >>> 24);
+		}
+		return BitSet.valueOf(bytes);
+	}
+	
+	/**
+	 * Performs logical AND of this buffer and given buffer in place, over their common size
+	 * @param other Second operand
+	 * @return This buffer
+	 */
+	public BitBuffer and(BitBuffer other){
+		combine(AND, 0, other, 0, this, 0, Math.min(size(), other.size()));
+		return this;
+	}
+	
+	/**
+	 * Performs logical AND of this buffer and given buffer, storing result in destination buffer, over common size of the buffers
+	 * @param other Second operand
+	 * @param dst Destination buffer, may be one of operands
+	 * @return Destination buffer
+	 */
+	public BitBuffer and(BitBuffer other, BitBuffer dst){
+		combine(AND, 0, other, 0, dst, 0, Math.min(Math.min(size(), other.size()), dst.size()));
+		return dst;
+	}
+	
+	/**
+	 * Performs logical AND of bit range of this buffer and bit range of given buffer in place
+	 * @param index First bit in this buffer
+	 * @param other Second operand
+	 * @param otherIndex First bit in second operand
+	 * @param length Amount of bits
+	 * @return This buffer
+	 */
+	public BitBuffer and(long index, BitBuffer other, long otherIndex, long length){
+		combine(AND, index, other, otherIndex, this, index, length);
+		return this;
+	}
+	
+	/**
+	 * Performs logical OR of this buffer and given buffer in place, over their common size
+	 * @param other Second operand
+	 * @return This buffer
+	 */
+	public BitBuffer or(BitBuffer other){
+		combine(OR, 0, other, 0, this, 0, Math.min(size(), other.size()));
+		return this;
+	}
+	
+	/**
+	 * Performs logical OR of this buffer and given buffer, storing result in destination buffer, over common size of the buffers
+	 * @param other Second operand
+	 * @param dst Destination buffer, may be one of operands
+	 * @return Destination buffer
+	 */
+	public BitBuffer or(BitBuffer other, BitBuffer dst){
+		combine(OR, 0, other, 0, dst, 0, Math.min(Math.min(size(), other.size()), dst.size()));
+		return dst;
+	}
+	
+	/**
+	 * Performs logical OR of bit range of this buffer and bit range of given buffer in place
+	 * @param index First bit in this buffer
+	 * @param other Second operand
+	 * @param otherIndex First bit in second operand
+	 * @param length Amount of bits
+	 * @return This buffer
+	 */
+	public BitBuffer or(long index, BitBuffer other, long otherIndex, long length){
+		combine(OR, index, other, otherIndex, this, index, length);
+		return this;
+	}
+	
+	/**
+	 * Performs logical XOR of this buffer and given buffer in place, over their common size
+	 * @param other Second operand
+	 * @return This buffer
+	 */
+	public BitBuffer xor(BitBuffer other){
+		combine(XOR, 0, other, 0, this, 0, Math.min(size(), other.size()));
+		return this;
+	}
+	
+	/**
+	 * Performs logical XOR of this buffer and given buffer, storing result in destination buffer, over common size of the buffers
+	 * @param other Second operand
+	 * @param dst Destination buffer, may be one of operands
+	 * @return Destination buffer
+	 */
+	public BitBuffer xor(BitBuffer other, BitBuffer dst){
+		combine(XOR, 0, other, 0, dst, 0, Math.min(Math.min(size(), other.size()), dst.size()));
+		return dst;
+	}
+	
+	/**
+	 * Performs logical XOR of bit range of this buffer and bit range of given buffer in place
+	 * @param index First bit in this buffer
+	 * @param other Second operand
+	 * @param otherIndex First bit in second operand
+	 * @param length Amount of bits
+	 * @return This buffer
+	 */
+	public BitBuffer xor(long index, BitBuffer other, long otherIndex, long length){
+		combine(XOR, index, other, otherIndex, this, index, length);
+		return this;
+	}
+	
+	/**
+	 * Clears bits set in the other buffer of this buffer and given buffer in place, over their common size
+	 * @param other Second operand
+	 * @return This buffer
+	 */
+	public BitBuffer andNot(BitBuffer other){
+		combine(AND_NOT, 0, other, 0, this, 0, Math.min(size(), other.size()));
+		return this;
+	}
+	
+	/**
+	 * Clears bits set in the other buffer of this buffer and given buffer, storing result in destination buffer, over common size of the buffers
+	 * @param other Second operand
+	 * @param dst Destination buffer, may be one of operands
+	 * @return Destination buffer
+	 */
+	public BitBuffer andNot(BitBuffer other, BitBuffer dst){
+		combine(AND_NOT, 0, other, 0, dst, 0, Math.min(Math.min(size(), other.size()), dst.size()));
+		return dst;
+	}
+	
+	/**
+	 * Clears bits set in the other buffer of bit range of this buffer and bit range of given buffer in place
+	 * @param index First bit in this buffer
+	 * @param other Second operand
+	 * @param otherIndex First bit in second operand
+	 * @param length Amount of bits
+	 * @return This buffer
+	 */
+	public BitBuffer andNot(long index, BitBuffer other, long otherIndex, long length){
+		combine(AND_NOT, index, other, otherIndex, this, index, length);
+		return this;
+	}
+	
+	/**
+	 * Inverts all bits of this buffer
+	 * @return This buffer
+	 */
+	public BitBuffer not(){
+		return not(0, size());
+	}
+	
+	/**
+	 * Stores inverted bits of this buffer in destination buffer, over common size of the buffers
+	 * @param dst Destination buffer
+	 * @return Destination buffer
+	 */
+	public BitBuffer not(BitBuffer dst){
+		combine(NOT, 0, this, 0, dst, 0, Math.min(size(), dst.size()));
+		return dst;
+	}
+	
+	/**
+	 * Inverts bit range of this buffer
+	 * @param index First bit to invert
+	 * @param length Amount of bits
+	 * @return This buffer
+	 */
+	public BitBuffer not(long index, long length){
+		combine(NOT, index, this, index, this, index, length);
+		return this;
+	}
+	
+	/**
+	 * @return Amount of set bits before the limit
+	 */
+	public long cardinality(){
+		return cardinality(0, limit());
+	}
+	
+	/**
+	 * @param index First bit of the range
+	 * @param length Amount of bits
+	 * @return Amount of set bits in given range
+	 */
+	public long cardinality(long index, long length){
+		long count = 0;
+		for(long end = index + length; index < end; index += 64){
+			count += Long.bitCount(getLongUnsigned(index, (int) Math.min(64, end - index)));
+		}
+		return count;
+	}
+	
+	/**
+	 * @param fromIndex First bit to check
+	 * @return Index of first set bit at or after given index and before the limit, or -1 if there is none
+	 */
+	public long nextSetBit(long fromIndex){
+		for(long end = limit(); fromIndex < end; fromIndex += 64){
+			int bits = (int) Math.min(64, end - fromIndex);
+			long word = getStreamBits(fromIndex, bits) << (64 - bits);
+			if(word != 0)
+				return fromIndex + Long.numberOfLeadingZeros(word);
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param fromIndex First bit to check
+	 * @return Index of first clear bit at or after given index and before the limit, or -1 if there is none
+	 */
+	public long nextClearBit(long fromIndex){
+		for(long end = limit(); fromIndex < end; fromIndex += 64){
+			int bits = (int) Math.min(64, end - fromIndex);
+			long word = ~getStreamBits(fromIndex, bits) << (64 - bits);
+			if(word != 0)
+				return fromIndex + Long.numberOfLeadingZeros(word);
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param fromIndex Last bit to check
+	 * @return Index of last set bit at or before given index, or -1 if there is none
+	 */
+	public long previousSetBit(long fromIndex){
+		for(fromIndex = Math.min(fromIndex, limit() - 1); fromIndex >= 0; fromIndex -= 64){
+			long start = Math.max(0, fromIndex - 63);
+			long word = getStreamBits(start, (int) (fromIndex - start + 1));
+			if(word != 0)
+				return fromIndex - Long.numberOfTrailingZeros(word);
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param other Buffer to check
+	 * @return Whether any bit is set in both buffers, over their common size
+	 */
+	public boolean intersects(BitBuffer other){
+		boolean stream = other.bitOrder() != bitOrder();
+		long length = Math.min(size(), other.size());
+		for(long index = 0; index < length; index += 64){
+			int bits = (int) Math.min(64, length - index);
+			long a = stream ? getStreamBits(index, bits) : getLongUnsigned(index, bits);
+			long b = stream ? other.getStreamBits(index, bits) : other.getLongUnsigned(index, bits);
+			if((a & b) != 0)
+				return true;
+		}
+		return false;
+	}
+	
+	private static final int AND = 0, OR = 1, XOR = 2, AND_NOT = 3, NOT = 4;
+	
+	/**
+	 * Combines ranges 64 bits at a time, cursors are not affected.
+	 * Values are compared in stream order only when bit orders of the buffers differ.
+	 * Destination range is either this range or doesn't overlap it, so only the second operand
+	 * may be overwritten before it's read
+	 */
+	private void combine(int operation, long index, BitBuffer other, long otherIndex, BitBuffer dst, long dstIndex, long length){
+		boolean stream = other.bitOrder() != bitOrder() || dst.bitOrder() != bitOrder();
+		//Walk backwards when destination starts inside second operand, so that its bits are read before they're overwritten
+		boolean backward = dst == other && otherIndex < dstIndex && dstIndex < otherIndex + length;
+		long last = (length - 1) & ~63L;
+		for(long i = 0; i < length; i += 64){
+			long done = backward ? last - i : i;
+			int bits = (int) Math.min(64, length - done);
+			long a = stream ? getStreamBits(index + done, bits) : getLongUnsigned(index + done, bits);
+			long b = operation == NOT ? 0 : stream ? other.getStreamBits(otherIndex + done, bits) : other.getLongUnsigned(otherIndex + done, bits);
+			long result;
+			switch(operation){
+			case AND: result = a & b; break;
+			case OR: result = a | b; break;
+			case XOR: result = a ^ b; break;
+			case AND_NOT: result = a & ~b; break;
+			default: result = ~a;
+			}
+			if(stream)
+				dst.putStreamBits(dstIndex + done, result, bits);
+			else
+				dst.putLong(dstIndex + done, result, bits);
+		}
+	}
+	
+	/**
+	 * Puts this BitBuffer into ByteBuffer, bytes put are the ones {@link #asByteBuffer()} returns
+	 * @param bb ByteBuffer to put data to
+	 * @return This buffer
+	 */
+	public BitBuffer putToByteBuffer(ByteBuffer bb){
+		bb.put(asByteArray());
+		return this;
+	}
+	
+	/**
+	 * Makes sure this buffer can hold at least given amount of bits.
+	 * Auto-extending buffers allocate the space up front, other buffers
+	 * only check that they are large enough.
+	 * @param bits Required capacity, in bits
+	 * @return This buffer
+	 * @throws BufferOverflowException If this buffer can't be extended to given capacity
+	 */
+	public BitBuffer ensureCapacity(long bits){
+		if(bits > rawLength() * 8)
+			throw new BufferOverflowException();
+		return this;
+	}
+	
+	/**
+	 * Releases space allocated past the data written to auto-extending
+	 * buffer. Other buffers are not affected.
+	 * @return This buffer
+	 */
+	public BitBuffer trimToSize(){
+		return this;
+	}
+	
+	/**
+	 * Releases resources held by this buffer. Native memory of 'direct'
+	 * buffers is freed immediately instead of waiting for garbage collection,
+	 * for other buffers this method does nothing. Calling this method
+	 * more than once has no effect.
+	 */
+	@Override
+	public void close(){
+	}
+	
+	/**
+	 * This function returns size of this buffer, in bits
+	 * @return Size of this buffer, in bits
+	 */
+	public abstract long size();
+	
+	/**
+	 * This function returns Virtual 'end' of this buffer, in bits
+	 * @return Virtual 'end' of this buffer, in bits
+	 */
+	public abstract long limit();
+	
+	/**
+	 * This function returns current position of cursor, in bits
+	 * @return Current position of cursor, in bits
+	 */
+	public abstract long position();
+	
+	/**
+	 * Sets cursor position for this buffer
+	 * @param newPosition position to set
+	 * @return This buffer
+	 */
+	public abstract BitBuffer setPosition(long newPosition);
+	
+	/**
+	 * Allocates new BitBuffer.
+	 * First bit is MSB of byte 0.
+	 * @param bits Amount of bits to allocate
+	 * @return Newly created instance of BitBuffer
+	 */
+	public static BitBuffer allocate(long bits){
+		return new ArrayBitBuffer(bits);
+	}
+	
+	/**
+	 * Allocates new BitBuffer backed by array of longs.
+	 * First bit is MSB of long 0.
+	 * @param bits Amount of bits to allocate
+	 * @return Newly created instance of BitBuffer
+	 */
+	public static BitBuffer allocateLongArray(long bits){
+		return new LongArrayBitBuffer(bits);
+	}
+	
+	/**
+	 * Allocates new 'direct' BitBuffer. This buffer is allocated using off-heap, native memory.
+	 * Memory of closed buffers is kept for reuse by later allocations, memory of buffers
+	 * that were never closed is released after they are garbage collected.
+	 * @see #close()
+	 * @param bits Amount of bits to allocate
+	 * @return Newly created instance of BitBuffer
+	 */
+	public static BitBuffer allocateDirect(long bits){
+		return new DirectBitBuffer(bits);
+	}
+	
+	/**
+	 * Creates new auto-extending BitBuffer.
+	 * Limit of this buffer in write mode has no real meaning.
+	 * @return Newly created instance of BitBuffer
+	 */
+	public static BitBuffer allocateDynamic(){
+		return new AutomaticBitBuffer();
+	}
+	
+	/**
+	 * Creates new auto-extending BitBuffer with pre-allocated space.
+	 * Limit of this buffer in write mode has no real meaning.
+	 * @param preallocateBits Amount of space to pre-allocate, in bits
+	 * @return Newly created instance of BitBuffer
+	 */
 	public static BitBuffer allocateDynamic(int preallocateBits){
 		return new AutomaticBitBuffer(preallocateBits);
 	}
 	
+	/**
+	 * Creates new auto-extending BitBuffer with pre-allocated space and given growth policy.
+	 * Limit of this buffer in write mode has no real meaning.
+	 * @param preallocateBits Amount of space to pre-allocate, in bits
+	 * @param policy {@link GrowthPolicy} used when buffer runs out of space
+	 * @return Newly created instance of BitBuffer
+	 */
+	public static BitBuffer allocateDynamic(long preallocateBits, GrowthPolicy policy){
+		return new AutomaticBitBuffer(preallocateBits, policy);
+	}
+	
+	/**
+	 * Wraps bitbuffer around bytes between position and limit of given buffer.
+	 * Any operation on this bitBuffer will modify the buffer's memory, both
+	 * heap and direct buffers are accessed in place. Position, limit and
+	 * byte order of given buffer are not affected.
+	 * @param buffer A ByteBuffer to wrap this buffer around
+	 * @return Newly created instance of BitBuffer wrapped around the ByteBuffer
+	 */
+	public static BitBuffer wrap(ByteBuffer buffer){
+		return new ByteBufferBitBuffer(buffer);
+	}
+	
+	/**
+	 * Maps region of a file into memory and wraps bitbuffer around it.
+	 * Any operation on this bitBuffer will modify the file, as
+	 * specified by {@link FileChannel#map(FileChannel.MapMode, long, long) map}.
+	 * Regions larger than 2GB are split into multiple mappings.
+	 * Like with {@link #wrap(byte[])}, buffer starts in write mode at position 0.
+	 * @param channel Channel of the file to map
+	 * @param mode Mapping mode
+	 * @param bitOffset Offset of the region in the file, in bits
+	 * @param bitLength Size of the region, in bits
+	 * @return Newly created instance of BitBuffer mapped to the file
+	 * @throws IOException If mapping fails
+	 */
+	public static BitBuffer map(FileChannel channel, FileChannel.MapMode mode, long bitOffset, long bitLength) throws IOException{
+		return ByteBufferBitBuffer.mapFile(channel, mode, bitOffset, bitLength);
+	}
+	
 	/**
 	 * Wraps bitbuffer around given array instance.
 	 * Any operation on this bitBuffer will modify the array
@@ -975,5 +2264,16 @@ public abstract class BitBuffer {
 	public static BitBuffer wrap(byte[] array){
 		return new ArrayBitBuffer(array);
 	}
+	
+	/**
+	 * Wraps bitbuffer around given array instance.
+	 * Any operation on this bitBuffer will modify the array.
+	 * First bit is MSB of long 0.
+	 * @param array A long array to wrap this buffer around
+	 * @return Newly created instance of BitBuffer wrapped around array
+	 */
+	public static BitBuffer wrap(long[] array){
+		return new LongArrayBitBuffer(array);
+	}
 
 }
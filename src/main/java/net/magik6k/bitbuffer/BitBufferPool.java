@@ -0,0 +1,240 @@
+package net.magik6k.bitbuffer;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of reusable BitBuffers. Buffers are grouped in power-of-two size classes,
+ * every thread keeps small cache(magazine) of free buffers of each class, so that
+ * most acquire/release calls don't need any synchronization.
+ * Acquired buffers are in write mode at position 0, with default bit and byte order,
+ * their contents are not cleared.
+ * Sample of acquired buffers is tracked, buffers that get garbage collected
+ * without being released are counted as leaks.
+ * @see #acquire(long)
+ * @see #release(BitBuffer)
+ */
+public class BitBufferPool {
+	private static final int MIN_SHIFT = 6;
+	
+	private final boolean direct;
+	private final int maxShift;
+	private final int magazineSize;
+	private final int leakSampling;
+	private final Depot[] depots;
+	private final ThreadLocal<Magazine[]> magazines = new ThreadLocal<Magazine[]>(){
+		@Override
+		protected Magazine[] initialValue() {
+			Magazine[] result = new Magazine[depots.length];
+			for(int i = 0; i < result.length; ++i){
+				result[i] = new Magazine(magazineSize);
+			}
+			return result;
+		}
+	};
+	
+	private final ReferenceQueue<BitBuffer> leakQueue = new ReferenceQueue<>();
+	private final Set<Lease> tracked = Collections.newSetFromMap(new ConcurrentHashMap<Lease, Boolean>());
+	private final AtomicLong leaks = new AtomicLong();
+	
+	/**
+	 * Creates pool of buffers up to 8MBit, with default cache sizes. Every 128th buffer is tracked for leaks.
+	 * @param direct Whether to pool 'direct' buffers
+	 */
+	public BitBufferPool(boolean direct) {
+		this(direct, 8L << 20, 16, 128);
+	}
+	
+	/**
+	 * Creates new pool
+	 * @param direct Whether to pool 'direct' buffers
+	 * @param maxPooledBits Size of the largest pooled buffer, larger buffers are allocated and released directly
+	 * @param magazineSize Amount of free buffers each thread keeps for every size class
+	 * @param leakSampling Every n-th acquired buffer is tracked for leaks, 1 tracks all buffers, 0 disables tracking
+	 */
+	public BitBufferPool(boolean direct, long maxPooledBits, int magazineSize, int leakSampling) {
+		this.direct = direct;
+		this.maxShift = Math.max(MIN_SHIFT, 64 - Long.numberOfLeadingZeros(((maxPooledBits + 7) >>> 3) - 1));
+		this.magazineSize = Math.max(1, magazineSize);
+		this.leakSampling = leakSampling;
+		this.depots = new Depot[maxShift - MIN_SHIFT + 1];
+		for(int i = 0; i < depots.length; ++i){
+			depots[i] = new Depot(this.magazineSize * 4);
+		}
+	}
+	
+	/**
+	 * Takes buffer from this pool, or allocates new one if pool has no free buffer
+	 * of the right size
+	 * @param bits Minimal size of the buffer, in bits
+	 * @return Buffer of at least given size, in write mode at position 0, MSB-first and big endian
+	 */
+	public BitBuffer acquire(long bits){
+		long bytes = Math.max(1, (bits + 7) >>> 3);
+		int shift = Math.max(MIN_SHIFT, 64 - Long.numberOfLeadingZeros(bytes - 1));
+		if(shift > maxShift){
+			SimpleBitBuffer buffer = allocate(bits);
+			buffer.lease = this;
+			return buffer;
+		}
+		
+		int sizeClass = shift - MIN_SHIFT;
+		Magazine magazine = magazines.get()[sizeClass];
+		SimpleBitBuffer buffer = magazine.pop();
+		if(buffer == null){
+			depots[sizeClass].refill(magazine);
+			buffer = magazine.pop();
+			if(buffer == null)
+				buffer = allocate(8L << shift);
+		}
+		
+		if(leakSampling > 0 && ++magazine.acquired % leakSampling == 0){
+			reportLeaks();
+			Lease lease = new Lease(this, buffer, leakQueue);
+			tracked.add(lease);
+			buffer.lease = lease;
+		}else{
+			buffer.lease = this;
+		}
+		return buffer;
+	}
+	
+	/**
+	 * Returns buffer to this pool. The buffer must not be used after it was released.
+	 * @param buffer Buffer acquired from this pool
+	 * @throws IllegalArgumentException If buffer was not acquired from this pool, or was already released
+	 */
+	public void release(BitBuffer buffer){
+		if(!(buffer instanceof SimpleBitBuffer))
+			throw new IllegalArgumentException("Buffer was not acquired from this pool");
+		SimpleBitBuffer simple = (SimpleBitBuffer) buffer;
+		Object lease = simple.lease;
+		if(lease instanceof Lease && ((Lease) lease).pool == this){
+			((Lease) lease).clear();
+			tracked.remove(lease);
+		}else if(lease != this){
+			throw new IllegalArgumentException("Buffer was not acquired from this pool or was already released");
+		}
+		simple.lease = null;
+		
+		int shift = 63 - Long.numberOfLeadingZeros(simple.rawLength());
+		if(simple.rawLength() != 1L << shift || shift < MIN_SHIFT || shift > maxShift){
+			simple.close();
+			return;
+		}
+		simple.clear();
+		simple.bitOrder(BitOrder.MSB_FIRST);
+		int sizeClass = shift - MIN_SHIFT;
+		Magazine magazine = magazines.get()[sizeClass];
+		if(!magazine.push(simple)){
+			depots[sizeClass].drain(magazine, this);
+			magazine.push(simple);
+		}
+	}
+	
+	/**
+	 * @return Amount of tracked buffers that were garbage collected without being released
+	 */
+	public long leakCount(){
+		reportLeaks();
+		return leaks.get();
+	}
+	
+	/**
+	 * Releases free buffers kept by the pool, except for those cached by threads
+	 */
+	public void trim(){
+		for(Depot depot : depots){
+			depot.trim();
+		}
+	}
+	
+	private SimpleBitBuffer allocate(long bits){
+		return direct ? new DirectBitBuffer(bits) : new ArrayBitBuffer(bits);
+	}
+	
+	private void reportLeaks(){
+		Lease lease;
+		while((lease = (Lease) leakQueue.poll()) != null){
+			if(tracked.remove(lease))
+				leaks.incrementAndGet();
+		}
+	}
+	
+	private static class Lease extends PhantomReference<BitBuffer>{
+		final BitBufferPool pool;
+		
+		Lease(BitBufferPool pool, BitBuffer buffer, ReferenceQueue<BitBuffer> queue) {
+			super(buffer, queue);
+			this.pool = pool;
+		}
+	}
+	
+	private static class Magazine {
+		final SimpleBitBuffer[] buffers;
+		int count;
+		int acquired;
+		
+		Magazine(int size) {
+			buffers = new SimpleBitBuffer[size];
+		}
+		
+		SimpleBitBuffer pop(){
+			if(count == 0)
+				return null;
+			SimpleBitBuffer buffer = buffers[--count];
+			buffers[count] = null;
+			return buffer;
+		}
+		
+		boolean push(SimpleBitBuffer buffer){
+			if(count == buffers.length)
+				return false;
+			buffers[count++] = buffer;
+			return true;
+		}
+	}
+	
+	/**
+	 * Shared store of free buffers, exchanges half of a magazine at a time
+	 */
+	private static class Depot {
+		private final SimpleBitBuffer[] buffers;
+		private int count;
+		
+		Depot(int size) {
+			buffers = new SimpleBitBuffer[size];
+		}
+		
+		synchronized void refill(Magazine magazine){
+			int n = Math.min(count, (magazine.buffers.length + 1) / 2);
+			for(int i = 0; i < n; ++i){
+				magazine.push(buffers[--count]);
+				buffers[count] = null;
+			}
+		}
+		
+		void drain(Magazine magazine, BitBufferPool pool){
+			int n = (magazine.buffers.length + 1) / 2;
+			synchronized(this){
+				for(; n > 0 && count < buffers.length; --n){
+					buffers[count++] = magazine.pop();
+				}
+			}
+			for(; n > 0; --n){
+				magazine.pop().close();
+			}
+		}
+		
+		synchronized void trim(){
+			for(; count > 0; --count){
+				buffers[count - 1].close();
+				buffers[count - 1] = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package net.magik6k.bitbuffer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads bit fields from a stream of bytes, with memory use independent of the stream length.
+ * Bytes are read into a fixed size window, next bits are cached in a 64 bit register
+ * refilled from the window, so fields may freely cross window boundaries.
+ * Values are read as from a {@link BitBuffer} with the same {@link BitOrder}.
+ */
+public class BitInputStream implements Closeable {
+	private static final int DEFAULT_WINDOW = 8192;
+
+	private final ReadableByteChannel channel;
+	private final boolean lsb;
+	private final ByteBuffer window;
+	private long bytes;
+	private boolean eof;
+	//MSB-first register is aligned to MSB, LSB-first one to LSB, unused bits are 0
+	private long register;
+	private int count;
+
+	/**
+	 * Creates MSB-first stream reading given input stream
+	 * @param in Stream to read
+	 */
+	public BitInputStream(InputStream in) {
+		this(Channels.newChannel(in), BitOrder.MSB_FIRST, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param in Stream to read
+	 * @param order Order of bits in the stream
+	 */
+	public BitInputStream(InputStream in, BitOrder order) {
+		this(Channels.newChannel(in), order, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Creates MSB-first stream reading given channel
+	 * @param channel Blocking channel to read
+	 */
+	public BitInputStream(ReadableByteChannel channel) {
+		this(channel, BitOrder.MSB_FIRST, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param channel Blocking channel to read
+	 * @param order Order of bits in the stream
+	 * @param windowSize Amount of bytes read from the channel at once
+	 */
+	public BitInputStream(ReadableByteChannel channel, BitOrder order, int windowSize) {
+		if(windowSize < 1)
+			throw new IllegalArgumentException("Invalid window size: " + windowSize);
+		this.channel = channel;
+		this.lsb = order == BitOrder.LSB_FIRST;
+		this.window = ByteBuffer.allocate(windowSize);
+		window.flip();
+	}
+
+	/**
+	 * Reads next window from the channel
+	 * @return Whether any bytes were read
+	 */
+	private boolean fill() throws IOException {
+		if(eof)
+			return false;
+		window.clear();
+		int read;
+		do{
+			read = channel.read(window);
+		}while(read == 0);
+		window.flip();
+		if(read < 0){
+			eof = true;
+			return false;
+		}
+		bytes += read;
+		return true;
+	}
+
+	/**
+	 * Loads whole bytes into the register while they fit
+	 */
+	private void refill() throws IOException {
+		while(count <= 56){
+			if(!window.hasRemaining() && !fill())
+				return;
+			long b = window.get() & 0xFFL;
+			register |= lsb ? b << count : b << (56 - count);
+			count += 8;
+		}
+	}
+
+	private void consume(int bits){
+		//Split shift, so that all 64 bits can be consumed
+		register = lsb ? (register >>> 1) >>> (bits - 1) : (register << 1) << (bits - 1);
+		count -= bits;
+	}
+
+	/**
+	 * @param bits Amount of bits to read
+	 * @return Unsigned value read
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public long getLongUnsigned(int bits) throws IOException {
+		if(bits == 0)
+			return 0;
+		if(bits > count){
+			refill();
+			if(bits > count){
+				//Refill stops short of 57 bits only at the end of the stream, longer values are read in two parts
+				if(count <= 56)
+					throw new EOFException();
+				if(lsb)
+					return getLongUnsigned(32) | (getLongUnsigned(bits - 32) << 32);
+				return (getLongUnsigned(bits - 32) << 32) | getLongUnsigned(32);
+			}
+		}
+		long value = lsb ? register & (-1L >>> (64 - bits)) : register >>> (64 - bits);
+		consume(bits);
+		return value;
+	}
+
+	/**
+	 * @param bits Amount of bits to read
+	 * @return Signed value read
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public long getLong(int bits) throws IOException {
+		if(bits == 0)
+			return 0;
+		return (getLongUnsigned(bits) << (64 - bits)) >> (64 - bits);
+	}
+
+	/**
+	 * @return 64 bit value
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public long getLong() throws IOException {
+		return getLongUnsigned(64);
+	}
+
+	/**
+	 * @param bits Amount of bits to read
+	 * @return Signed value read
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public int getInt(int bits) throws IOException {
+		return (int) getLong(bits);
+	}
+
+	/**
+	 * @param bits Amount of bits to read
+	 * @return Unsigned value read
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public int getIntUnsigned(int bits) throws IOException {
+		return (int) getLongUnsigned(bits);
+	}
+
+	/**
+	 * @return 32 bit value
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public int getInt() throws IOException {
+		return (int) getLongUnsigned(32);
+	}
+
+	/**
+	 * @param bits Amount of bits to read
+	 * @return Signed value read
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public byte getByte(int bits) throws IOException {
+		return (byte) getLong(bits);
+	}
+
+	/**
+	 * @param bits Amount of bits to read
+	 * @return Unsigned value read
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public byte getByteUnsigned(int bits) throws IOException {
+		return (byte) getLongUnsigned(bits);
+	}
+
+	/**
+	 * @return 8 bit value
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public byte getByte() throws IOException {
+		return (byte) getLongUnsigned(8);
+	}
+
+	/**
+	 * @return Single bit
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public boolean getBoolean() throws IOException {
+		return getLongUnsigned(1) != 0;
+	}
+
+	/**
+	 * Reads value of given width without consuming it. Bits past the end of the stream read as 0
+	 * @param bits Amount of bits, 0-56
+	 * @return The same value as {@link BitBuffer#peekBits(int)} would return
+	 * @throws IOException Thrown if reading fails
+	 */
+	public long peekBits(int bits) throws IOException {
+		if(bits > 56)
+			throw new IllegalArgumentException("Can't peek " + bits + " bits");
+		if(bits == 0)
+			return 0;
+		if(bits > count)
+			refill();
+		return lsb ? register & (-1L >>> (64 - bits)) : register >>> (64 - bits);
+	}
+
+	/**
+	 * Skips given amount of bits, skipped bytes are read and discarded
+	 * @param bits Amount of bits to skip
+	 * @return This stream
+	 * @throws IOException Thrown if reading fails, {@link EOFException} at the end of the stream
+	 */
+	public BitInputStream skipBits(long bits) throws IOException {
+		if(bits < 0)
+			throw new IllegalArgumentException("Negative skip: " + bits);
+		if(bits > count){
+			bits -= count;
+			register = 0;
+			count = 0;
+			while(bits >= 8){
+				if(!window.hasRemaining() && !fill())
+					throw new EOFException();
+				int skipped = (int) Math.min(window.remaining(), bits >>> 3);
+				window.position(window.position() + skipped);
+				bits -= skipped * 8L;
+			}
+		}
+		getLongUnsigned((int) bits);
+		return this;
+	}
+
+	/**
+	 * Skips bits up to next byte boundary
+	 * @return This stream
+	 * @throws IOException Thrown if reading fails
+	 */
+	public BitInputStream alignToByte() throws IOException {
+		return skipBits(count & 7);
+	}
+
+	/**
+	 * @return Amount of bits read so far
+	 */
+	public long position(){
+		return (bytes - window.remaining()) * 8 - count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,136 @@
+package net.magik6k.bitbuffer;
+
+import java.nio.ByteOrder;
+
+/**
+ * Order of bits in a {@link BitBuffer}. Decides which bit of a byte comes first in the stream
+ * and which bit of a value is written first.
+ * @see BitBuffer#bitOrder(BitOrder)
+ */
+public abstract class BitOrder {
+	/**
+	 * First bit of the buffer is MSB of byte 0, values are written starting with their most
+	 * significant bit. This is the default order
+	 */
+	public static final BitOrder MSB_FIRST = new BitOrder("MSB_FIRST", ByteOrder.BIG_ENDIAN) {
+		@Override
+		long get(SimpleBitBuffer buffer, long index, int bits) {
+			return buffer.getBits(index, bits);
+		}
+
+		@Override
+		void put(SimpleBitBuffer buffer, long index, long value, int bits) {
+			buffer.putBits(index, value, bits);
+		}
+
+		@Override
+		long toStream(long value, int bits) {
+			return value;
+		}
+
+		@Override
+		long bytesToStream(long value) {
+			return value;
+		}
+
+		@Override
+		void pack(long[] src, int offset, long[] words, int bits) {
+			BitPacking.pack(src, offset, words, bits);
+		}
+
+		@Override
+		void unpack(long[] words, long[] dst, int offset, int bits) {
+			BitPacking.unpack(words, dst, offset, bits);
+		}
+	};
+
+	/**
+	 * First bit of the buffer is LSB of byte 0, values are written starting with their least
+	 * significant bit, as in DEFLATE or GIF streams
+	 */
+	public static final BitOrder LSB_FIRST = new BitOrder("LSB_FIRST", ByteOrder.LITTLE_ENDIAN) {
+		@Override
+		long get(SimpleBitBuffer buffer, long index, int bits) {
+			return buffer.getBitsLsb(index, bits);
+		}
+
+		@Override
+		void put(SimpleBitBuffer buffer, long index, long value, int bits) {
+			buffer.putBitsLsb(index, value, bits);
+		}
+
+		@Override
+		long toStream(long value, int bits) {
+			return Long.reverse(value) >>> (64 - bits);
+		}
+
+		@Override
+		long bytesToStream(long value) {
+			return Long.reverseBytes(Long.reverse(value));
+		}
+
+		@Override
+		void pack(long[] src, int offset, long[] words, int bits) {
+			BitPacking.packLsb(src, offset, words, bits);
+		}
+
+		@Override
+		void unpack(long[] words, long[] dst, int offset, int bits) {
+			BitPacking.unpackLsb(words, dst, offset, bits);
+		}
+	};
+
+	private final String name;
+	private final ByteOrder byteOrder;
+
+	private BitOrder(String name, ByteOrder byteOrder) {
+		this.name = name;
+		this.byteOrder = byteOrder;
+	}
+
+	/**
+	 * @return Byte order in which multi-byte values are laid out when written as single field in this bit order
+	 */
+	public ByteOrder naturalByteOrder(){
+		return byteOrder;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Reads value of given width at given bit index
+	 */
+	abstract long get(SimpleBitBuffer buffer, long index, int bits);
+
+	/**
+	 * Writes value of given width at given bit index
+	 */
+	abstract void put(SimpleBitBuffer buffer, long index, long value, int bits);
+
+	/**
+	 * Converts value read in this order into stream order, where first bit of the stream is the most
+	 * significant bit of the value. The conversion is its own inverse
+	 * @param value Value read or to be written in this order
+	 * @param bits Width of the value, 1-64
+	 * @return Converted value
+	 */
+	abstract long toStream(long value, int bits);
+
+	/**
+	 * Converts sequence of bytes (first byte in most significant bits) into stream order, its own inverse
+	 */
+	abstract long bytesToStream(long value);
+
+	/**
+	 * Packs block of {@link BitPacking#BLOCK} values of width 1-63 into words laid out in this order
+	 */
+	abstract void pack(long[] src, int offset, long[] words, int bits);
+
+	/**
+	 * Unpacks block of {@link BitPacking#BLOCK} sign extended values of width 1-63 from words laid out in this order
+	 */
+	abstract void unpack(long[] words, long[] dst, int offset, int bits);
+}
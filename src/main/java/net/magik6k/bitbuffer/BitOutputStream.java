@@ -0,0 +1,212 @@
+package net.magik6k.bitbuffer;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes bit fields to a stream of bytes, with memory use independent of the stream length.
+ * Fields are gathered in a 64 bit accumulator, whole words are stored in a fixed size window
+ * which is written to the channel when full. Fields are laid out as in a {@link BitBuffer}
+ * with the same {@link BitOrder}.
+ */
+public class BitOutputStream implements Closeable, Flushable {
+	private static final int DEFAULT_WINDOW = 8192;
+
+	private final WritableByteChannel channel;
+	private final OutputStream out;
+	private final boolean lsb;
+	private final ByteBuffer window;
+	private long bytes;
+	//MSB-first accumulator keeps pending bits in count least significant bits, bits above may be stale
+	private long acc;
+	private int count;
+
+	/**
+	 * Creates MSB-first stream writing to given output stream
+	 * @param out Stream to write to
+	 */
+	public BitOutputStream(OutputStream out) {
+		this(out, BitOrder.MSB_FIRST);
+	}
+
+	/**
+	 * @param out Stream to write to
+	 * @param order Order of bits in the stream
+	 */
+	public BitOutputStream(OutputStream out, BitOrder order) {
+		this(Channels.newChannel(out), out, order, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Creates MSB-first stream writing to given channel
+	 * @param channel Blocking channel to write to
+	 */
+	public BitOutputStream(WritableByteChannel channel) {
+		this(channel, BitOrder.MSB_FIRST, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param channel Blocking channel to write to
+	 * @param order Order of bits in the stream
+	 * @param windowSize Amount of bytes written to the channel at once, at least 8
+	 */
+	public BitOutputStream(WritableByteChannel channel, BitOrder order, int windowSize) {
+		this(channel, null, order, windowSize);
+	}
+
+	private BitOutputStream(WritableByteChannel channel, OutputStream out, BitOrder order, int windowSize) {
+		if(windowSize < 8)
+			throw new IllegalArgumentException("Invalid window size: " + windowSize);
+		this.channel = channel;
+		this.out = out;
+		this.lsb = order == BitOrder.LSB_FIRST;
+		this.window = ByteBuffer.allocate(windowSize).order(lsb ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+	}
+
+	private void drain() throws IOException {
+		window.flip();
+		while(window.hasRemaining()){
+			bytes += channel.write(window);
+		}
+		window.clear();
+	}
+
+	/**
+	 * Puts given amount of least significant bits of value
+	 * @param l Value to write
+	 * @param bits Width of the value, 0-64
+	 * @return This stream
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	public BitOutputStream putLong(long l, int bits) throws IOException {
+		if(bits == 0)
+			return this;
+		l &= -1L >>> (64 - bits);
+		int free = 64 - count;
+		if(bits < free){
+			acc = lsb ? acc | (l << count) : (acc << bits) | l;
+			count += bits;
+			return this;
+		}
+		//Fill the word, split shifts allow empty accumulator
+		int rest = bits - free;
+		if(window.remaining() < 8)
+			drain();
+		window.putLong(lsb ? acc | (l << count) : ((acc << 1) << (free - 1)) | (l >>> rest));
+		acc = lsb ? (l >>> 1) >>> (free - 1) : l;
+		count = rest;
+		return this;
+	}
+
+	/**
+	 * @param l 64 bit value
+	 * @return This stream
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	public BitOutputStream putLong(long l) throws IOException {
+		return putLong(l, 64);
+	}
+
+	/**
+	 * @param i Value to write
+	 * @param bits Width of the value, 0-32
+	 * @return This stream
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	public BitOutputStream putInt(int i, int bits) throws IOException {
+		return putLong(i, bits);
+	}
+
+	/**
+	 * @param i 32 bit value
+	 * @return This stream
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	public BitOutputStream putInt(int i) throws IOException {
+		return putLong(i, 32);
+	}
+
+	/**
+	 * @param b Value to write
+	 * @param bits Width of the value, 0-8
+	 * @return This stream
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	public BitOutputStream putByte(byte b, int bits) throws IOException {
+		return putLong(b, bits);
+	}
+
+	/**
+	 * @param b 8 bit value
+	 * @return This stream
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	public BitOutputStream putByte(byte b) throws IOException {
+		return putLong(b, 8);
+	}
+
+	/**
+	 * @param bit Single bit
+	 * @return This stream
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	public BitOutputStream putBoolean(boolean bit) throws IOException {
+		return putLong(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * Pads written bits with 0 bits up to next byte boundary
+	 * @return This stream
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	public BitOutputStream alignToByte() throws IOException {
+		return putLong(0, -count & 7);
+	}
+
+	/**
+	 * @return Amount of bits written so far
+	 */
+	public long position(){
+		return (bytes + window.position()) * 8 + count;
+	}
+
+	/**
+	 * Writes all complete bytes to the channel. Bits of incomplete byte are kept
+	 * until it's completed or the stream is closed
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	@Override
+	public void flush() throws IOException {
+		int whole = count >>> 3;
+		if(window.remaining() < whole)
+			drain();
+		for(int i = 0; i < whole; ++i){
+			window.put((byte) (lsb ? acc >>> (8 * i) : acc >>> (count - 8 * (i + 1))));
+		}
+		if(lsb && whole > 0)
+			acc >>>= 8 * whole;
+		count &= 7;
+		drain();
+		if(out != null)
+			out.flush();
+	}
+
+	/**
+	 * Pads last byte with 0 bits, flushes and closes the channel
+	 * @throws IOException Thrown if writing to the channel fails
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!channel.isOpen())
+			return;
+		alignToByte();
+		flush();
+		channel.close();
+	}
+}
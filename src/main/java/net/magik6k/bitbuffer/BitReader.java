@@ -0,0 +1,149 @@
+package net.magik6k.bitbuffer;
+
+import java.nio.BufferUnderflowException;
+
+/**
+ * Sequential reader of a BitBuffer caching next bits in a 64 bit register.
+ * Register is refilled with a single absolute read of up to 64 bits when it runs out,
+ * so reading small fields costs a shift and a mask. Values are the same as
+ * {@link BitBuffer#getLongUnsigned(int)} would return in the buffer's {@link BitOrder}.
+ * Reader starts at the position of the buffer and ends at its limit, cursor of the buffer
+ * is not used. Buffer must not be modified while the reader is used.
+ */
+public class BitReader {
+	private final BitBuffer buffer;
+	private final boolean lsb;
+	private final long limit;
+	private long next;
+	//MSB-first register is aligned to MSB, LSB-first one to LSB, unused bits are 0
+	private long register;
+	private int count;
+
+	/**
+	 * Creates reader starting at the position of given buffer
+	 * @param buffer Buffer to read
+	 */
+	public BitReader(BitBuffer buffer) {
+		this.buffer = buffer;
+		this.lsb = buffer.bitOrder() == BitOrder.LSB_FIRST;
+		this.limit = buffer.limit();
+		this.next = buffer.position();
+	}
+
+	private void refill(){
+		int bits = (int) Math.min(64 - count, limit - next);
+		if(bits <= 0)
+			return;
+		long value = buffer.getLongUnsigned(next, bits);
+		register |= lsb ? value << count : value << (64 - count - bits);
+		count += bits;
+		next += bits;
+	}
+
+	private void consume(int bits){
+		//Split shift, so that all 64 bits can be consumed
+		register = lsb ? (register >>> 1) >>> (bits - 1) : (register << 1) << (bits - 1);
+		count -= bits;
+	}
+
+	/**
+	 * Reads unsigned value of given width
+	 * @param bits Width of the value, 0-64
+	 * @return Value read
+	 */
+	public long readBits(int bits){
+		if(bits == 0)
+			return 0;
+		if(bits > count){
+			refill();
+			if(bits > count)
+				throw new BufferUnderflowException();
+		}
+		long value = lsb ? register & (-1L >>> (64 - bits)) : register >>> (64 - bits);
+		consume(bits);
+		return value;
+	}
+
+	/**
+	 * Reads signed value of given width
+	 * @param bits Width of the value, 0-64
+	 * @return Value read, sign extended
+	 */
+	public long readSignedBits(int bits){
+		if(bits == 0)
+			return 0;
+		return (readBits(bits) << (64 - bits)) >> (64 - bits);
+	}
+
+	/**
+	 * Reads single bit
+	 * @return Binary value of the bit
+	 */
+	public boolean readBoolean(){
+		return readBits(1) != 0;
+	}
+
+	/**
+	 * Reads value of given width without moving the position. Bits past the limit read as 0
+	 * @param bits Width of the value, 0-64
+	 * @return The same value as {@link BitBuffer#peekBits(int)} would return
+	 */
+	public long peekBits(int bits){
+		if(bits == 0)
+			return 0;
+		if(bits > count)
+			refill();
+		return lsb ? register & (-1L >>> (64 - bits)) : register >>> (64 - bits);
+	}
+
+	/**
+	 * Moves the position forward
+	 * @param bits Amount of bits to skip
+	 * @return This reader
+	 */
+	public BitReader skipBits(long bits){
+		if(bits <= count){
+			if(bits > 0)
+				consume((int) bits);
+			else if(bits < 0)
+				throw new BufferUnderflowException();
+			return this;
+		}
+		long position = next + bits - count;
+		if(position > limit)
+			throw new BufferUnderflowException();
+		register = 0;
+		count = 0;
+		next = position;
+		return this;
+	}
+
+	/**
+	 * Skips bits up to next byte boundary of the buffer's storage
+	 * @return This reader
+	 */
+	public BitReader alignToByte(){
+		return skipBits(-position() & 7);
+	}
+
+	/**
+	 * @return Index of next bit to read in the buffer
+	 */
+	public long position(){
+		return next - count;
+	}
+
+	/**
+	 * @return Amount of bits left before the limit
+	 */
+	public long remaining(){
+		return limit - position();
+	}
+
+	/**
+	 * @return Buffer being read
+	 */
+	public BitBuffer buffer(){
+		return buffer;
+	}
+}
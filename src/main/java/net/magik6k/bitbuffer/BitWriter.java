@@ -0,0 +1,103 @@
+package net.magik6k.bitbuffer;
+
+/**
+ * Sequential writer gathering bits in a 64 bit accumulator. Only whole 64 bit words are written
+ * to the buffer, so every bit of storage is modified once instead of once per field.
+ * Fields are laid out the same as with {@link BitBuffer#putLong(long, int)} in the buffer's {@link BitOrder}.
+ * Writer continues at the position of the buffer and moves it as words are written,
+ * pending bits are written by {@link #flush()}. Buffer shouldn't be used directly until then.
+ */
+public class BitWriter implements AutoCloseable {
+	private final BitBuffer buffer;
+	private final boolean lsb;
+	//MSB-first accumulator keeps pending bits in count least significant bits, bits above may be stale
+	private long acc;
+	private int count;
+
+	/**
+	 * Creates writer starting at the position of given buffer
+	 * @param buffer Buffer to write to
+	 */
+	public BitWriter(BitBuffer buffer) {
+		this.buffer = buffer;
+		this.lsb = buffer.bitOrder() == BitOrder.LSB_FIRST;
+	}
+
+	/**
+	 * Writes given amount of least significant bits of value
+	 * @param value Value to write
+	 * @param bits Width of the value, 0-64
+	 * @return This writer
+	 */
+	public BitWriter writeBits(long value, int bits){
+		if(bits == 0)
+			return this;
+		value &= -1L >>> (64 - bits);
+		int free = 64 - count;
+		if(bits < free){
+			acc = lsb ? acc | (value << count) : (acc << bits) | value;
+			count += bits;
+			return this;
+		}
+		//Fill the word, split shifts allow empty accumulator
+		int rest = bits - free;
+		buffer.putLong(lsb ? acc | (value << count) : ((acc << 1) << (free - 1)) | (value >>> rest), 64);
+		acc = lsb ? (value >>> 1) >>> (free - 1) : value;
+		count = rest;
+		return this;
+	}
+
+	/**
+	 * Writes single bit
+	 * @param bit Value of the bit
+	 * @return This writer
+	 */
+	public BitWriter writeBoolean(boolean bit){
+		return writeBits(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * Pads written bits with 0 bits up to next byte boundary of the buffer's storage
+	 * @return This writer
+	 */
+	public BitWriter alignToByte(){
+		return writeBits(0, (int) (-position() & 7));
+	}
+
+	/**
+	 * Writes pending bits to the buffer, bits following them are left intact
+	 * @return This writer
+	 */
+	public BitWriter flush(){
+		if(count > 0){
+			buffer.putLong(lsb ? acc : acc & (-1L >>> (64 - count)), count);
+			acc = 0;
+			count = 0;
+		}
+		return this;
+	}
+
+	/**
+	 * Pads written bits up to byte boundary with 0 bits and flushes them.
+	 * Position of the buffer is left after the padding
+	 */
+	@Override
+	public void close(){
+		alignToByte();
+		flush();
+	}
+
+	/**
+	 * @return Index of next bit to write in the buffer
+	 */
+	public long position(){
+		return buffer.position() + count;
+	}
+
+	/**
+	 * @return Buffer being written
+	 */
+	public BitBuffer buffer(){
+		return buffer;
+	}
+}
@@ -0,0 +1,134 @@
+package net.magik6k.bitbuffer;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+class ByteBufferBitBuffer extends SimpleBitBuffer{
+	private static final int SEGMENT_SHIFT = 30;
+	
+	private final ByteBuffer[] segments;
+	private final int segmentShift;
+	private final long segmentMask;
+	private final long length;
+	
+	/**
+	 * @param segments Buffers holding the data, all but the last one have to be exactly 1 &lt;&lt; segmentShift bytes long
+	 * @param segmentShift log2 of segment size
+	 * @param bits Size of this buffer, in bits
+	 */
+	protected ByteBufferBitBuffer(ByteBuffer[] segments, int segmentShift, long bits) {
+		this.segments = segments;
+		this.segmentShift = segmentShift;
+		this.segmentMask = (1L << segmentShift) - 1;
+		this.length = (bits + 7) >>> 3;
+		limit = bits;
+	}
+	
+	/**
+	 * Wraps bytes between position and limit of given buffer
+	 * @param buffer Buffer to wrap
+	 */
+	protected ByteBufferBitBuffer(ByteBuffer buffer) {
+		this(new ByteBuffer[]{buffer.slice()}, 31, buffer.remaining() * 8L);
+	}
+	
+	static SimpleBitBuffer mapFile(FileChannel channel, FileChannel.MapMode mode, long bitOffset, long bitLength) throws IOException{
+		return mapFile(channel, mode, bitOffset, bitLength, SEGMENT_SHIFT);
+	}
+	
+	static SimpleBitBuffer mapFile(FileChannel channel, FileChannel.MapMode mode, long bitOffset, long bitLength, int segmentShift) throws IOException{
+		if(bitOffset < 0 || bitLength < 0)
+			throw new IllegalArgumentException("Negative offset or length");
+		long start = bitOffset >>> 3;
+		long bits = (bitOffset & 7) + bitLength;
+		long bytes = (bits + 7) >>> 3;
+		ByteBuffer[] segments = new ByteBuffer[(int) ((bytes + (1L << segmentShift) - 1) >>> segmentShift)];
+		for(int i = 0; i < segments.length; ++i){
+			long offset = (long) i << segmentShift;
+			segments[i] = channel.map(mode, start + offset, Math.min(1L << segmentShift, bytes - offset));
+		}
+		SimpleBitBuffer mapped = new ByteBufferBitBuffer(segments, segmentShift, bits);
+		if((bitOffset & 7) == 0)
+			return mapped;
+		return new SlicedBitBuffer(mapped, bitOffset & 7, bitLength, mapped.isReadOnly());
+	}
+	
+	@Override
+	public boolean isReadOnly() {
+		return segments.length > 0 && segments[0].isReadOnly();
+	}
+
+	@Override
+	protected byte rawGet(long index) {
+		if(index >= length)
+			throw new BufferOverflowException();
+		return segments[(int) (index >>> segmentShift)].get((int) (index & segmentMask));
+	}
+
+	@Override
+	protected void rawSet(long index, byte value) {
+		if(index >= length)
+			throw new BufferOverflowException();
+		segments[(int) (index >>> segmentShift)].put((int) (index & segmentMask), value);
+	}
+	
+	@Override
+	protected long rawGetLong(long index) {
+		long offset = index & segmentMask;
+		if(offset + 8 > segmentMask + 1)
+			return super.rawGetLong(index);
+		return segments[(int) (index >>> segmentShift)].getLong((int) offset);
+	}
+	
+	@Override
+	protected void rawSetLong(long index, long value) {
+		long offset = index & segmentMask;
+		if(offset + 8 > segmentMask + 1){
+			super.rawSetLong(index, value);
+			return;
+		}
+		segments[(int) (index >>> segmentShift)].putLong((int) offset, value);
+	}
+	
+	@Override
+	protected void rawGetBytes(long index, byte[] dst, int offset, int length) {
+		if(index + length > this.length)
+			throw new BufferOverflowException();
+		while(length > 0){
+			ByteBuffer segment = segments[(int) (index >>> segmentShift)].duplicate();
+			segment.position((int) (index & segmentMask));
+			int n = Math.min(length, segment.remaining());
+			segment.get(dst, offset, n);
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+	
+	@Override
+	protected void rawSetBytes(long index, byte[] src, int offset, int length) {
+		if(index + length > this.length)
+			throw new BufferOverflowException();
+		while(length > 0){
+			ByteBuffer segment = segments[(int) (index >>> segmentShift)].duplicate();
+			segment.position((int) (index & segmentMask));
+			int n = Math.min(length, segment.remaining());
+			segment.put(src, offset, n);
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+	
+	@Override
+	protected ByteBuffer rawView() {
+		return segments.length == 1 ? segments[0].duplicate() : null;
+	}
+
+	@Override
+	protected long rawLength() {
+		return length;
+	}
+}
@@ -1,18 +1,24 @@
 package net.magik6k.bitbuffer;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.reflect.Field;
 import java.nio.BufferOverflowException;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import sun.misc.Cleaner;
 import sun.misc.Unsafe;
 
 class DirectBitBuffer extends SimpleBitBuffer{
-	private static final Unsafe unsafe;
+	static final Unsafe unsafe;
+	private static final boolean NATIVE_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+	private static final long BYTE_ARRAY_OFFSET;
 	
 	private long address;
-	private final long size;
+	private long size;
 	private final Deallocator dealloc;
-	final Cleaner finalizer; //unused, because Cleaner's class strongly references all instances
 	
 	static {
 		Field theUnsafe;
@@ -25,39 +31,44 @@ class DirectBitBuffer extends SimpleBitBuffer{
 			throw new Error(Unsafe.class.getName()+" is not accessible",e);
 		}
 		unsafe = us;
+		BYTE_ARRAY_OFFSET = unsafe.arrayBaseOffset(byte[].class);
 	}
 	protected DirectBitBuffer(long bits){
-		long bytes = (long) Math.ceil(bits / 8.d);
-		try {
-			address = unsafe.allocateMemory(bytes);
-		} catch (OutOfMemoryError ex) {
-            throw ex;
-        }
-		
-		Deallocator dall = new Deallocator(address);
-		dealloc = dall;
-		finalizer = Cleaner.create(this,dall);//point finalizer to this object
+		this(bits, NativeArena.DEFAULT);
+	}
+	
+	protected DirectBitBuffer(long bits, NativeArena arena){
+		long bytes = (bits + 7) >>> 3;
+		address = arena.allocate(bytes);
+		dealloc = new Deallocator(this, arena, address, bytes);
 		
 		unsafe.setMemory(address,bytes,(byte)0);
 		size = bytes;
 	}
 	
 	protected void reallocate(long newBits){
-		long oldsize = size;
-		long newsize = (newBits+(8-newBits%8))/8;
-		if(newsize > oldsize){
-			long oldaddress = address;
-			long newaddress = unsafe.reallocateMemory(oldaddress,newsize);
-			dealloc.address = newaddress;
-			address = newaddress;
-			unsafe.setMemory(newaddress+oldsize,newsize-oldsize,(byte)0);
-		}else if(newsize < oldsize){
-			long newaddress = unsafe.reallocateMemory(address,newsize);
-			dealloc.address = newaddress;
+		long newsize = (newBits + 7) >>> 3;
+		if(newsize != size){
+			long newaddress = dealloc.arena.allocate(newsize);
+			unsafe.copyMemory(address, newaddress, Math.min(size, newsize));
+			if(newsize > size)
+				unsafe.setMemory(newaddress + size, newsize - size, (byte)0);
+			dealloc.replace(newaddress, newsize);
 			address = newaddress;
+			size = newsize;
 		}
 	}
 	
+	/**
+	 * Releases native memory of this buffer. Any further access to the buffer fails.
+	 */
+	@Override
+	public void close() {
+		size = 0;
+		address = 0;
+		dealloc.run();
+	}
+	
 	//@Override
 	protected byte rawGet(long index) {
 		if(index >= size)
@@ -72,25 +83,116 @@ class DirectBitBuffer extends SimpleBitBuffer{
 		unsafe.putByte(address + index, value);
 	}
 
+	@Override
+	protected long rawGetLong(long index) {
+		if(index + 8 > size)
+			throw new BufferOverflowException();
+		long value = unsafe.getLong(address + index);
+		return NATIVE_BIG_ENDIAN ? value : Long.reverseBytes(value);
+	}
+	
+	@Override
+	protected void rawSetLong(long index, long value) {
+		if(index + 8 > size)
+			throw new BufferOverflowException();
+		unsafe.putLong(address + index, NATIVE_BIG_ENDIAN ? value : Long.reverseBytes(value));
+	}
+	
+	@Override
+	protected long rawGetLongLE(long index) {
+		if(index + 8 > size)
+			throw new BufferOverflowException();
+		long value = unsafe.getLong(address + index);
+		return NATIVE_BIG_ENDIAN ? Long.reverseBytes(value) : value;
+	}
+	
+	@Override
+	protected void rawSetLongLE(long index, long value) {
+		if(index + 8 > size)
+			throw new BufferOverflowException();
+		unsafe.putLong(address + index, NATIVE_BIG_ENDIAN ? Long.reverseBytes(value) : value);
+	}
+
+	@Override
+	protected void rawGetBytes(long index, byte[] dst, int offset, int length) {
+		if(index + length > size)
+			throw new BufferOverflowException();
+		if(offset < 0 || offset + length > dst.length)
+			throw new IndexOutOfBoundsException();
+		unsafe.copyMemory(null, address + index, dst, BYTE_ARRAY_OFFSET + offset, length);
+	}
+	
+	@Override
+	protected void rawSetBytes(long index, byte[] src, int offset, int length) {
+		if(index + length > size)
+			throw new BufferOverflowException();
+		if(offset < 0 || offset + length > src.length)
+			throw new IndexOutOfBoundsException();
+		unsafe.copyMemory(src, BYTE_ARRAY_OFFSET + offset, null, address + index, length);
+	}
+	
+	static void copy(DirectBitBuffer src, long srcIndex, DirectBitBuffer dst, long index, long length){
+		if(srcIndex + length > src.size || index + length > dst.size)
+			throw new BufferOverflowException();
+		unsafe.copyMemory(src.address + srcIndex, dst.address + index, length);
+	}
+
 	//@Override
 	protected long rawLength(){
 		return size;
 	}
-	static class Deallocator implements Runnable{
-		volatile long address;
-		public Deallocator(long adr){
-			address = adr;
+	/**
+	 * Frees memory of the buffer, either explicitly or after the buffer was collected
+	 */
+	static class Deallocator extends PhantomReference<DirectBitBuffer> implements Runnable{
+		private static final ReferenceQueue<DirectBitBuffer> queue = new ReferenceQueue<>();
+		private static final Set<Deallocator> pending = Collections.newSetFromMap(new ConcurrentHashMap<Deallocator, Boolean>());
+		
+		static {
+			Thread thread = new Thread("BitBuffer Deallocator"){
+				@Override
+				public void run() {
+					while(true){
+						try{
+							((Deallocator) queue.remove()).run();
+						}catch(InterruptedException e){
+							//keep going, there is nobody else to free the memory
+						}
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		final NativeArena arena;
+		private long address;
+		private long bytes;
+		
+		Deallocator(DirectBitBuffer buffer, NativeArena arena, long address, long bytes){
+			super(buffer, queue);
+			this.arena = arena;
+			this.address = address;
+			this.bytes = bytes;
+			pending.add(this);
 		}
+		
+		synchronized void replace(long address, long bytes){
+			arena.release(this.address, this.bytes);
+			this.address = address;
+			this.bytes = bytes;
+		}
+		
 		@Override
-		public void run(){ //invoked when buffer already died
-			long address = this.address;
+		public synchronized void run(){ //invoked on close or when buffer already died
 			if(address == 0){
-				//already done?!?
+				//already done
 				return;
 			}
-			unsafe.freeMemory(address);
-			this.address = 0;
+			arena.release(address, bytes);
+			address = 0;
+			clear();
+			pending.remove(this);
 		}
-		
 	}
 }
\ No newline at end of file
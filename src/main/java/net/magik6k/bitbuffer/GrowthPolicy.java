@@ -0,0 +1,58 @@
+package net.magik6k.bitbuffer;
+
+/**
+ * Decides how much space an auto-extending {@link BitBuffer} allocates
+ * when it runs out of space
+ * @see BitBuffer#allocateDynamic(long, GrowthPolicy)
+ */
+public abstract class GrowthPolicy {
+	/**
+	 * Doubles the capacity on every growth. This is the default policy
+	 */
+	public static final GrowthPolicy DOUBLING = factor(2);
+	
+	/**
+	 * Grows the capacity by half on every growth
+	 */
+	public static final GrowthPolicy ONE_AND_HALF = factor(1.5);
+	
+	/**
+	 * Creates policy multiplying the capacity by given factor
+	 * @param factor Growth factor, greater than 1
+	 * @return Newly created policy
+	 */
+	public static GrowthPolicy factor(final double factor){
+		if(factor <= 1)
+			throw new IllegalArgumentException("Growth factor must be greater than 1");
+		return new GrowthPolicy() {
+			@Override
+			public long grow(long capacity, long required) {
+				return Math.max(required, (long) (capacity * factor));
+			}
+		};
+	}
+	
+	/**
+	 * Creates policy extending the capacity by fixed amount of bits
+	 * @param chunkBits Amount of bits to add on every growth
+	 * @return Newly created policy
+	 */
+	public static GrowthPolicy chunk(final long chunkBits){
+		if(chunkBits <= 0)
+			throw new IllegalArgumentException("Chunk size must be positive");
+		return new GrowthPolicy() {
+			@Override
+			public long grow(long capacity, long required) {
+				return Math.max(required, capacity + chunkBits);
+			}
+		};
+	}
+	
+	/**
+	 * Computes new capacity of buffer
+	 * @param capacity Current capacity, in bits
+	 * @param required Capacity that has to be available after growth, in bits
+	 * @return New capacity, in bits. Values smaller than required are rounded up
+	 */
+	public abstract long grow(long capacity, long required);
+}
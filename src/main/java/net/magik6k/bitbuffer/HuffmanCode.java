@@ -0,0 +1,383 @@
+package net.magik6k.bitbuffer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Canonical Huffman code over symbols 0 to n-1. Codes are assigned in order of
+ * length and then symbol value, as in DEFLATE, so code is fully described by its lengths.
+ * Codes are written in stream order of the buffer's {@link BitOrder}.
+ * Decoder looks symbols up in multi-level tables, {@value #ROOT_BITS} bits in the root table
+ * and up to {@value #SUB_BITS} bits in every further level, consuming whole code at once.
+ * @see BitBuffer#put(int, HuffmanCode)
+ * @see BitBuffer#getInt(HuffmanCode)
+ */
+public class HuffmanCode {
+	/**
+	 * Maximal length of single code
+	 */
+	public static final int MAX_LENGTH = 31;
+
+	private static final int ROOT_BITS = 10;
+	private static final int SUB_BITS = 6;
+
+	//Entry: value << 6 | link flag | length or index bits
+	private static final int LINK = 32;
+	private static final int BITS = 31;
+	private static final int INVALID = -1;
+
+	private final int[] lengths;
+	private final int[] codes;
+	private final int maxLength;
+	private final int rootBits;
+	private int[] table;
+	private int tableSize;
+
+	/**
+	 * Creates canonical code with given code lengths
+	 * @param lengths Code length of each symbol, 0 for symbols that aren't used
+	 */
+	public HuffmanCode(int[] lengths) {
+		this.lengths = lengths.clone();
+		this.codes = new int[lengths.length];
+
+		int max = 0;
+		int[] count = new int[MAX_LENGTH + 1];
+		for(int length : lengths){
+			if(length < 0 || length > MAX_LENGTH)
+				throw new IllegalArgumentException("Invalid code length: " + length);
+			++count[length];
+			max = Math.max(max, length);
+		}
+		maxLength = max;
+
+		long code = 0;
+		int[] next = new int[MAX_LENGTH + 1];
+		int[] first = new int[MAX_LENGTH + 2];
+		for(int length = 1; length <= MAX_LENGTH; ++length){
+			code = (code + (length > 1 ? count[length - 1] : 0)) << 1;
+			if(code + count[length] > 1L << length)
+				throw new IllegalArgumentException("Code lengths are oversubscribed");
+			next[length] = (int) code;
+			first[length + 1] = first[length] + count[length];
+		}
+
+		//Symbols sorted by code length and value, codes are increasing in this order
+		int[] sorted = new int[lengths.length - count[0]];
+		for(int symbol = 0; symbol < lengths.length; ++symbol){
+			int length = lengths[symbol];
+			if(length != 0){
+				codes[symbol] = next[length]++;
+				sorted[first[length]++] = symbol;
+			}
+		}
+
+		rootBits = Math.min(ROOT_BITS, maxLength);
+		table = new int[1 << rootBits];
+		if(sorted.length > 0)
+			build(sorted, 0, sorted.length, 0, rootBits);
+	}
+
+	/**
+	 * Creates valid, near-optimal code for given symbol frequencies, with no code longer than given length
+	 * @see #lengths(long[], int)
+	 * @param frequencies Frequency of each symbol, 0 for symbols that aren't used
+	 * @param maxLength Maximal code length, 1 to {@link #MAX_LENGTH}
+	 * @return Code instance
+	 */
+	public static HuffmanCode fromFrequencies(long[] frequencies, int maxLength){
+		return new HuffmanCode(lengths(frequencies, maxLength));
+	}
+
+	/**
+	 * Computes lengths of valid, near-optimal code for given symbol frequencies, with no code longer than given length.
+	 * Lengths are optimal unless the limit is hit, then longer codes are clamped to the limit and
+	 * shorter ones are lengthened until the code is valid again, which isn't guaranteed to be optimal.
+	 * Single used symbol gets code of length 1
+	 * @param frequencies Frequency of each symbol, 0 for symbols that aren't used
+	 * @param maxLength Maximal code length, 1 to {@link #MAX_LENGTH}
+	 * @return Code length of each symbol
+	 */
+	public static int[] lengths(final long[] frequencies, int maxLength){
+		if(maxLength < 1 || maxLength > MAX_LENGTH)
+			throw new IllegalArgumentException("Invalid maximal length: " + maxLength);
+		int[] lengths = new int[frequencies.length];
+		int used = 0;
+		for(long frequency : frequencies){
+			if(frequency < 0)
+				throw new IllegalArgumentException("Negative frequency: " + frequency);
+			if(frequency > 0)
+				++used;
+		}
+		if((long) used > 1L << maxLength)
+			throw new IllegalArgumentException(used + " symbols can't be coded in " + maxLength + " bits");
+
+		Integer[] symbols = new Integer[used];
+		used = 0;
+		for(int symbol = 0; symbol < frequencies.length; ++symbol){
+			if(frequencies[symbol] > 0)
+				symbols[used++] = symbol;
+		}
+		if(used == 1)
+			lengths[symbols[0]] = 1;
+		if(used < 2)
+			return lengths;
+		Arrays.sort(symbols, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(frequencies[a], frequencies[b]);
+			}
+		});
+
+		//In-place minimum redundancy code of Moffat and Katajainen, A[i] ends as length of i-th least frequent symbol
+		long[] a = new long[used];
+		for(int i = 0; i < used; ++i){
+			a[i] = frequencies[symbols[i]];
+		}
+		a[0] += a[1];
+		int root = 0;
+		int leaf = 2;
+		for(int next = 1; next < used - 1; ++next){
+			if(leaf >= used || a[root] < a[leaf]){
+				a[next] = a[root];
+				a[root++] = next;
+			}else{
+				a[next] = a[leaf++];
+			}
+			if(leaf >= used || (root < next && a[root] < a[leaf])){
+				a[next] += a[root];
+				a[root++] = next;
+			}else{
+				a[next] += a[leaf++];
+			}
+		}
+		a[used - 2] = 0;
+		for(int next = used - 3; next >= 0; --next){
+			a[next] = a[(int) a[next]] + 1;
+		}
+		int available = 1;
+		int depth = 0;
+		root = used - 2;
+		for(int next = used - 1; available > 0; ++depth){
+			int inner = 0;
+			while(root >= 0 && a[root] == depth){
+				++inner;
+				--root;
+			}
+			while(available > inner){
+				a[next--] = depth;
+				--available;
+			}
+			available = 2 * inner;
+		}
+
+		//Limit lengths, then lengthen longest codes under the limit until Kraft inequality holds again
+		long kraft = 0;
+		for(int i = 0; i < used; ++i){
+			a[i] = Math.min(a[i], maxLength);
+			kraft += 1L << (maxLength - a[i]);
+		}
+		while(kraft > 1L << maxLength){
+			int i = 0;
+			while(a[i] == maxLength)
+				++i;
+			++a[i];
+			kraft -= 1L << (maxLength - a[i]);
+		}
+		for(int i = 0; i < used; ++i){
+			lengths[symbols[i]] = (int) a[i];
+		}
+		return lengths;
+	}
+
+	/**
+	 * Fills table of given size with entries for sorted symbols from-to, all sharing prefix of given length
+	 * @return Offset of the table
+	 */
+	private int build(int[] sorted, int from, int to, int consumed, int bits){
+		int offset = tableSize;
+		tableSize += 1 << bits;
+		if(tableSize > table.length)
+			table = Arrays.copyOf(table, Math.max(tableSize, table.length * 2));
+		Arrays.fill(table, offset, tableSize, INVALID);
+
+		while(from < to){
+			int symbol = sorted[from];
+			int length = lengths[symbol] - consumed;
+			int code = codes[symbol] & (int) ((1L << length) - 1);
+			if(length <= bits){
+				int entry = (symbol << 6) | length;
+				int start = offset + (code << (bits - length));
+				Arrays.fill(table, start, start + (1 << (bits - length)), entry);
+				++from;
+				continue;
+			}
+
+			int prefix = code >>> (length - bits);
+			int end = from + 1;
+			while(end < to && (codes[sorted[end]] >>> (lengths[sorted[end]] - consumed - bits)) == (codes[symbol] >>> (length - bits)))
+				++end;
+			int subBits = Math.min(SUB_BITS, lengths[sorted[end - 1]] - consumed - bits);
+			int sub = build(sorted, from, end, consumed + bits, subBits);
+			table[offset + prefix] = (sub << 6) | LINK | subBits;
+			from = end;
+		}
+		return offset;
+	}
+
+	/**
+	 * @param window Next bits of the stream, aligned to MSB
+	 * @return Leaf entry with total code length
+	 */
+	private int lookup(long window){
+		int bits = rootBits;
+		int entry = table[(int) (window >>> (64 - bits))];
+		int consumed = 0;
+		while((entry & LINK) != 0 && entry != INVALID){
+			consumed += bits;
+			bits = entry & BITS;
+			entry = table[(entry >>> 6) + (int) ((window << consumed) >>> (64 - bits))];
+		}
+		if(entry == INVALID)
+			throw new IllegalStateException("Invalid Huffman code");
+		return entry + consumed;
+	}
+
+	/**
+	 * Writes code of given symbol at the position of given buffer
+	 * @param buffer Buffer to write to
+	 * @param symbol Symbol to encode
+	 */
+	public void encode(BitBuffer buffer, int symbol){
+		int length = lengths[symbol];
+		if(length == 0)
+			throw new IllegalArgumentException("Symbol " + symbol + " has no code");
+		buffer.putStreamBits(codes[symbol], length);
+	}
+
+	/**
+	 * Writes code of given symbol to given writer
+	 * @param writer Writer to write to
+	 * @param symbol Symbol to encode
+	 */
+	public void encode(BitWriter writer, int symbol){
+		int length = lengths[symbol];
+		if(length == 0)
+			throw new IllegalArgumentException("Symbol " + symbol + " has no code");
+		writer.writeBits(writer.buffer().bitOrder().toStream(codes[symbol], length), length);
+	}
+
+	/**
+	 * Writes codes of symbols from array at the position of given buffer, up to 64 bits of codes are written at once
+	 * @param buffer Buffer to write to
+	 * @param symbols Symbols to encode
+	 * @param offset First index in array
+	 * @param limit Last index in array, exclusive
+	 */
+	public void encode(BitBuffer buffer, int[] symbols, int offset, int limit){
+		long acc = 0;
+		int bits = 0;
+		for(; offset < limit; ++offset){
+			int symbol = symbols[offset];
+			int length = lengths[symbol];
+			if(length == 0)
+				throw new IllegalArgumentException("Symbol " + symbol + " has no code");
+			if(bits + length > 64){
+				buffer.putStreamBits(acc, bits);
+				acc = 0;
+				bits = 0;
+			}
+			acc = (acc << length) | codes[symbol];
+			bits += length;
+		}
+		buffer.putStreamBits(acc, bits);
+	}
+
+	/**
+	 * Reads symbol at the position of given buffer
+	 * @param buffer Buffer to read from
+	 * @return Decoded symbol
+	 */
+	public int decode(BitBuffer buffer){
+		if(maxLength == 0)
+			throw new IllegalStateException("Code has no symbols");
+		long window = buffer.bitOrder().toStream(buffer.peekBits(maxLength), maxLength) << (64 - maxLength);
+		int entry = lookup(window);
+		buffer.skipBits(entry & BITS);
+		return entry >>> 6;
+	}
+
+	/**
+	 * Reads symbol from given reader
+	 * @param reader Reader to read from
+	 * @return Decoded symbol
+	 */
+	public int decode(BitReader reader){
+		if(maxLength == 0)
+			throw new IllegalStateException("Code has no symbols");
+		long window = reader.buffer().bitOrder().toStream(reader.peekBits(maxLength), maxLength) << (64 - maxLength);
+		int entry = lookup(window);
+		reader.skipBits(entry & BITS);
+		return entry >>> 6;
+	}
+
+	/**
+	 * Reads symbols at the position of given buffer into array, symbols are decoded from 64 bit windows.
+	 * If the buffer ends before all symbols are read, symbols decoded up to that point are kept
+	 * @param buffer Buffer to read from
+	 * @param dst Array to write symbols to
+	 * @param offset First index in array
+	 * @param limit Last index in array, exclusive
+	 */
+	public void decode(BitBuffer buffer, int[] dst, int offset, int limit){
+		if(offset < limit && maxLength == 0)
+			throw new IllegalStateException("Code has no symbols");
+		BitOrder order = buffer.bitOrder();
+		while(offset < limit){
+			//Window is padded with 0 bits past the limit, codes are decoded only from bits before it
+			int available = (int) Math.min(64, buffer.limit() - buffer.position());
+			if(available < maxLength){
+				dst[offset++] = decode(buffer);
+				continue;
+			}
+			long window = order.toStream(buffer.peekBits(64), 64);
+			int used = 0;
+			do{
+				int entry = lookup(window << used);
+				used += entry & BITS;
+				dst[offset++] = entry >>> 6;
+			}while(offset < limit && used + maxLength <= available);
+			buffer.skipBits(used);
+		}
+	}
+
+	/**
+	 * @param symbol Symbol
+	 * @return Code length of given symbol, 0 if it has no code
+	 */
+	public int length(int symbol){
+		return lengths[symbol];
+	}
+
+	/**
+	 * @param symbol Symbol
+	 * @return Code of given symbol, most significant bit is written first
+	 */
+	public int code(int symbol){
+		return codes[symbol];
+	}
+
+	/**
+	 * @return Code length of each symbol
+	 */
+	public int[] lengths(){
+		return lengths.clone();
+	}
+
+	/**
+	 * @return Length of the longest code
+	 */
+	public int maxLength(){
+		return maxLength;
+	}
+}
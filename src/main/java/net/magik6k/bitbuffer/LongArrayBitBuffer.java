@@ -0,0 +1,93 @@
+package net.magik6k.bitbuffer;
+
+import java.util.BitSet;
+
+class LongArrayBitBuffer extends SimpleBitBuffer{
+	private long[] words;
+	
+	protected LongArrayBitBuffer(long bits) {
+		this(new long[(int) ((bits + 63) >>> 6)]);
+		limit = bits;
+	}
+	
+	protected LongArrayBitBuffer(long[] words) {
+		this.words = words;
+		limit = words.length * 64L;
+	}
+
+	@Override
+	protected byte rawGet(long index) {
+		return (byte) (words[(int) (index >>> 3)] >>> ((7 - (index & 7)) << 3));
+	}
+
+	@Override
+	protected void rawSet(long index, byte value) {
+		int word = (int) (index >>> 3);
+		int shift = (int) (7 - (index & 7)) << 3;
+		words[word] = (words[word] & ~(0xFFL << shift)) | ((value & 0xFFL) << shift);
+	}
+	
+	@Override
+	protected long rawGetLong(long index) {
+		int word = (int) (index >>> 3);
+		int shift = (int) (index & 7) << 3;
+		if(shift == 0)
+			return words[word];
+		return (words[word] << shift) | (words[word + 1] >>> (64 - shift));
+	}
+	
+	@Override
+	protected void rawSetLong(long index, long value) {
+		int word = (int) (index >>> 3);
+		int shift = (int) (index & 7) << 3;
+		if(shift == 0){
+			words[word] = value;
+			return;
+		}
+		words[word] = (words[word] & (-1L << (64 - shift))) | (value >>> shift);
+		words[word + 1] = (words[word + 1] & (-1L >>> shift)) | (value << (64 - shift));
+	}
+	
+	@Override
+	protected long getBits(long index, int bits) {
+		int word = (int) (index >>> 6);
+		int shift = (int) (index & 63);
+		long value = (words[word] << shift) >>> (64 - bits);
+		if(shift + bits <= 64)
+			return value;
+		int rest = shift + bits - 64;
+		return value | (words[word + 1] >>> (64 - rest));
+	}
+	
+	@Override
+	protected void putBits(long index, long value, int bits) {
+		int word = (int) (index >>> 6);
+		int shift = (int) (index & 63);
+		if(shift + bits <= 64){
+			int low = 64 - shift - bits;
+			long mask = (-1L >>> (64 - bits)) << low;
+			words[word] = (words[word] & ~mask) | ((value << low) & mask);
+			return;
+		}
+		int rest = shift + bits - 64;
+		long mask = -1L >>> shift;
+		words[word] = (words[word] & ~mask) | ((value >>> rest) & mask);
+		words[word + 1] = (words[word + 1] & (-1L >>> rest)) | (value << (64 - rest));
+	}
+	
+	@Override
+	public BitSet asBitSet() {
+		if(bitOrder != BitOrder.MSB_FIRST)
+			return super.asBitSet();
+		long[] reversed = new long[words.length];
+		for(int i = 0; i < words.length; ++i){
+			reversed[i] = Long.reverse(words[i]);
+		}
+		return BitSet.valueOf(reversed);
+	}
+
+	@Override
+	protected long rawLength() {
+		return words.length * 8L;
+	}
+}
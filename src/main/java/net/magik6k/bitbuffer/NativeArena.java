@@ -0,0 +1,93 @@
+package net.magik6k.bitbuffer;
+
+import java.util.Arrays;
+
+/**
+ * Keeps released native memory blocks for reuse. Blocks are grouped in power-of-two
+ * size classes, blocks larger than the biggest class are allocated and freed directly.
+ */
+class NativeArena {
+	static final NativeArena DEFAULT = new NativeArena(64L << 20);
+	
+	private static final int MIN_SHIFT = 6;
+	private static final int MAX_SHIFT = 20;
+	
+	private final long maxRetained;
+	private final long[][] free = new long[MAX_SHIFT - MIN_SHIFT + 1][];
+	private final int[] count = new int[MAX_SHIFT - MIN_SHIFT + 1];
+	private long retained;
+	
+	/**
+	 * @param maxRetained Maximum amount of bytes kept in the arena, blocks released above this limit are freed
+	 */
+	NativeArena(long maxRetained) {
+		this.maxRetained = maxRetained;
+		for(int i = 0; i < free.length; ++i){
+			free[i] = new long[4];
+		}
+	}
+	
+	private static int sizeClass(long bytes){
+		int shift = bytes <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(bytes - 1);
+		return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+	}
+	
+	/**
+	 * Allocates block of native memory. Contents of the block are undefined
+	 * @param bytes Size of the block
+	 * @return Address of the block
+	 */
+	long allocate(long bytes){
+		int sizeClass = sizeClass(bytes);
+		if(sizeClass < free.length){
+			synchronized(this){
+				if(count[sizeClass] > 0){
+					retained -= 1L << (sizeClass + MIN_SHIFT);
+					return free[sizeClass][--count[sizeClass]];
+				}
+			}
+			bytes = 1L << (sizeClass + MIN_SHIFT);
+		}
+		return DirectBitBuffer.unsafe.allocateMemory(bytes);
+	}
+	
+	/**
+	 * Returns block to the arena
+	 * @param address Address of the block
+	 * @param bytes Size the block was allocated with
+	 */
+	void release(long address, long bytes){
+		int sizeClass = sizeClass(bytes);
+		if(sizeClass < free.length){
+			long blockSize = 1L << (sizeClass + MIN_SHIFT);
+			synchronized(this){
+				if(retained + blockSize <= maxRetained){
+					if(count[sizeClass] == free[sizeClass].length){
+						free[sizeClass] = Arrays.copyOf(free[sizeClass], count[sizeClass] * 2);
+					}
+					free[sizeClass][count[sizeClass]++] = address;
+					retained += blockSize;
+					return;
+				}
+			}
+		}
+		DirectBitBuffer.unsafe.freeMemory(address);
+	}
+	
+	/**
+	 * Frees all memory kept by the arena
+	 */
+	synchronized void trim(){
+		for(int i = 0; i < free.length; ++i){
+			for(int j = 0; j < count[i]; ++j){
+				DirectBitBuffer.unsafe.freeMemory(free[i][j]);
+			}
+			count[i] = 0;
+		}
+		retained = 0;
+	}
+	
+	synchronized long retained(){
+		return retained;
+	}
+}
@@ -0,0 +1,74 @@
+package net.magik6k.bitbuffer;
+
+/**
+ * Fixed length array of unsigned values of fixed bit width, stored densely in a BitBuffer.
+ * Element i occupies bits [bitOffset + i * bits, bitOffset + (i + 1) * bits) of the buffer.
+ * Elements are accessed by absolute bit index, cursor of the underlying buffer is never used,
+ * so concurrent reads are safe. Writes to neighbouring elements may share storage words and
+ * must be synchronized externally.
+ */
+public class PackedIntArray {
+	private final PackedLongArray values;
+	
+	/**
+	 * Creates new zero filled array
+	 * @param length Amount of elements
+	 * @param bits Width of each element, 1-32
+	 */
+	public PackedIntArray(int length, int bits) {
+		this(new LongArrayBitBuffer(Math.max(1, (long) length * bits)), 0, length, bits);
+	}
+	
+	/**
+	 * Creates array view over part of given buffer. Changes to the array are visible in the buffer and vice versa.
+	 * @param buffer Buffer holding the elements
+	 * @param bitOffset Bit index of the first element
+	 * @param length Amount of elements
+	 * @param bits Width of each element, 1-32
+	 */
+	public PackedIntArray(BitBuffer buffer, long bitOffset, int length, int bits) {
+		if(bits < 1 || bits > 32)
+			throw new IllegalArgumentException("Invalid element width: " + bits);
+		this.values = new PackedLongArray(buffer, bitOffset, length, bits);
+	}
+	
+	/**
+	 * @param index Index of the element
+	 * @return Unsigned value of the element
+	 */
+	public int get(int index){
+		return (int) values.get(index);
+	}
+	
+	/**
+	 * Sets element to given value, bits above element width are ignored
+	 * @param index Index of the element
+	 * @param value New value
+	 * @return This array
+	 */
+	public PackedIntArray set(int index, int value){
+		values.set(index, value);
+		return this;
+	}
+	
+	/**
+	 * @return Amount of elements
+	 */
+	public int length(){
+		return values.length();
+	}
+	
+	/**
+	 * @return Width of each element in bits
+	 */
+	public int bits(){
+		return values.bits();
+	}
+	
+	/**
+	 * @return Buffer holding the elements
+	 */
+	public BitBuffer buffer(){
+		return values.buffer();
+	}
+}
@@ -0,0 +1,88 @@
+package net.magik6k.bitbuffer;
+
+/**
+ * Fixed length array of unsigned values of fixed bit width, stored densely in a BitBuffer.
+ * Element i occupies bits [bitOffset + i * bits, bitOffset + (i + 1) * bits) of the buffer.
+ * Elements are accessed by absolute bit index, cursor of the underlying buffer is never used,
+ * so concurrent reads are safe. Writes to neighbouring elements may share storage words and
+ * must be synchronized externally.
+ */
+public class PackedLongArray {
+	private final SimpleBitBuffer buffer;
+	private final long bitOffset;
+	private final int length;
+	private final int bits;
+	
+	/**
+	 * Creates new zero filled array
+	 * @param length Amount of elements
+	 * @param bits Width of each element, 1-64
+	 */
+	public PackedLongArray(int length, int bits) {
+		this(new LongArrayBitBuffer(Math.max(1, (long) length * bits)), 0, length, bits);
+	}
+	
+	/**
+	 * Creates array view over part of given buffer. Changes to the array are visible in the buffer and vice versa.
+	 * @param buffer Buffer holding the elements
+	 * @param bitOffset Bit index of the first element
+	 * @param length Amount of elements
+	 * @param bits Width of each element, 1-64
+	 */
+	public PackedLongArray(BitBuffer buffer, long bitOffset, int length, int bits) {
+		if(bits < 1 || bits > 64)
+			throw new IllegalArgumentException("Invalid element width: " + bits);
+		if(!(buffer instanceof SimpleBitBuffer))
+			throw new IllegalArgumentException("Unsupported buffer type");
+		if(length < 0 || bitOffset < 0 || bitOffset + (long) length * bits > buffer.size())
+			throw new IndexOutOfBoundsException();
+		this.buffer = (SimpleBitBuffer) buffer;
+		this.bitOffset = bitOffset;
+		this.length = length;
+		this.bits = bits;
+	}
+	
+	/**
+	 * @param index Index of the element
+	 * @return Unsigned value of the element
+	 */
+	public long get(int index){
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+		return buffer.bitOrder.get(buffer, bitOffset + (long) index * bits, bits);
+	}
+	
+	/**
+	 * Sets element to given value, bits above element width are ignored
+	 * @param index Index of the element
+	 * @param value New value
+	 * @return This array
+	 */
+	public PackedLongArray set(int index, long value){
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+		buffer.bitOrder.put(buffer, bitOffset + (long) index * bits, value, bits);
+		return this;
+	}
+	
+	/**
+	 * @return Amount of elements
+	 */
+	public int length(){
+		return length;
+	}
+	
+	/**
+	 * @return Width of each element in bits
+	 */
+	public int bits(){
+		return bits;
+	}
+	
+	/**
+	 * @return Buffer holding the elements
+	 */
+	public BitBuffer buffer(){
+		return buffer;
+	}
+}
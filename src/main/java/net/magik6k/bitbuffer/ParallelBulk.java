@@ -0,0 +1,128 @@
+package net.magik6k.bitbuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits fixed-width bulk transfers into chunks processed on a ForkJoinPool.
+ * Chunks are multiples of 64 values, so every chunk starts with a whole packing block.
+ * Storage is written in read-modify-write windows reaching up to 64 bits before and
+ * 72 bits after the written range, so writers leave a guard of values at both ends of
+ * every chunk untouched; guards are written sequentially once all chunks are done.
+ */
+final class ParallelBulk {
+	/**
+	 * Below this amount of values transfers are done sequentially
+	 */
+	static final int THRESHOLD = 1 << 14;
+
+	private ParallelBulk() {
+	}
+
+	static void put(SimpleBitBuffer buffer, long index, int[] array, int offset, int limit, int bits, ForkJoinPool pool){
+		run(new Chunks(buffer, index, array, offset, limit, bits, true), pool);
+	}
+
+	static void put(SimpleBitBuffer buffer, long index, long[] array, int offset, int limit, int bits, ForkJoinPool pool){
+		run(new Chunks(buffer, index, array, offset, limit, bits, true), pool);
+	}
+
+	static void get(SimpleBitBuffer buffer, long index, int[] array, int offset, int limit, int bits, ForkJoinPool pool){
+		run(new Chunks(buffer, index, array, offset, limit, bits, false), pool);
+	}
+
+	static void get(SimpleBitBuffer buffer, long index, long[] array, int offset, int limit, int bits, ForkJoinPool pool){
+		run(new Chunks(buffer, index, array, offset, limit, bits, false), pool);
+	}
+
+	private static void run(Chunks chunks, ForkJoinPool pool){
+		if(pool == null)
+			pool = ForkJoinPool.commonPool();
+		if(chunks.limit - chunks.offset < THRESHOLD || pool.getParallelism() < 2){
+			chunks.transfer(chunks.offset, chunks.limit);
+			return;
+		}
+		int chunk = Math.max(THRESHOLD / 4, (chunks.limit - chunks.offset) / (pool.getParallelism() * 4) + 1);
+		chunks.chunk = (chunk + BitPacking.BLOCK - 1) / BitPacking.BLOCK * BitPacking.BLOCK;
+		pool.invoke(chunks);
+		if(chunks.write)
+			chunks.writeGuards();
+	}
+
+	private static class Chunks extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final SimpleBitBuffer buffer;
+		final long index;
+		final Object array;
+		final int offset;
+		final int limit;
+		final int bits;
+		final boolean write;
+		final int guard;
+		int chunk;
+
+		Chunks(SimpleBitBuffer buffer, long index, Object array, int offset, int limit, int bits, boolean write) {
+			this.buffer = buffer;
+			this.index = index;
+			this.array = array;
+			this.offset = offset;
+			this.limit = limit;
+			this.bits = bits;
+			this.write = write;
+			//At least 128 bits, rounded up to whole blocks
+			this.guard = write ? ((128 + bits - 1) / bits + BitPacking.BLOCK - 1) / BitPacking.BLOCK * BitPacking.BLOCK : 0;
+		}
+
+		@Override
+		protected void compute() {
+			List<RecursiveAction> tasks = new ArrayList<>();
+			for(long lo = offset; lo < limit; lo += chunk){
+				final int from = (int) lo + guard;
+				final int to = (int) Math.min(limit, lo + chunk) - guard;
+				if(from >= to)
+					continue;
+				tasks.add(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						transfer(from, to);
+					}
+				});
+			}
+			invokeAll(tasks);
+		}
+
+		void writeGuards(){
+			for(long lo = offset; lo < limit; lo += chunk){
+				int hi = (int) Math.min(limit, lo + chunk);
+				int from = (int) lo + guard;
+				int to = hi - guard;
+				if(from >= to){
+					transfer((int) lo, hi);
+				}else{
+					transfer((int) lo, from);
+					transfer(to, hi);
+				}
+			}
+		}
+
+		void transfer(int from, int to){
+			long start = index + (long) (from - offset) * bits;
+			if(array instanceof int[]){
+				if(write)
+					buffer.putPacked(start, (int[]) array, from, to, bits);
+				else
+					buffer.getPacked(start, (int[]) array, from, to, bits);
+			}else{
+				if(write)
+					buffer.putPacked(start, (long[]) array, from, to, bits);
+				else
+					buffer.getPacked(start, (long[]) array, from, to, bits);
+			}
+		}
+	}
+}
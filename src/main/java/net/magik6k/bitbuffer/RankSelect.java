@@ -0,0 +1,196 @@
+package net.magik6k.bitbuffer;
+
+/**
+ * Rank/select index over bits of a BitBuffer. Bits are read directly from the buffer,
+ * the index keeps one 16 bit count per 512 bits, one 64 bit count per 65536 bits and
+ * position of every 4096th 1 and 0 bit, about 3-4% of the indexed size.
+ * Index describes content of the buffer at creation time, buffer must not be modified
+ * while the index is used. Cursor of the buffer is not used.
+ */
+public class RankSelect {
+	private static final int BLOCK_SHIFT = 9;
+	private static final int SUPER_SHIFT = 16;
+	private static final int WORDS_PER_BLOCK = 1 << (BLOCK_SHIFT - 6);
+	private static final int SAMPLE = 4096;
+
+	private final BitBuffer buffer;
+	private final long size;
+	private final long ones;
+	private final long[] superRanks;
+	private final char[] blockRanks;
+	private final int[] oneSamples;
+	private final int[] zeroSamples;
+
+	/**
+	 * Indexes bits between 0 and the limit of given buffer
+	 * @param buffer Buffer in read mode
+	 */
+	public RankSelect(BitBuffer buffer) {
+		if(!buffer.canRead())
+			throw new IllegalStateException("Buffer is not in read mode");
+		this.buffer = buffer;
+		this.size = buffer.limit();
+
+		int blocks = (int) (size >>> BLOCK_SHIFT) + 1;
+		superRanks = new long[(int) (size >>> SUPER_SHIFT) + 1];
+		blockRanks = new char[blocks];
+		long rank = 0;
+		long words = (size + 63) >>> 6;
+		for(int block = 0; block < blocks; ++block){
+			if((block & ((1 << (SUPER_SHIFT - BLOCK_SHIFT)) - 1)) == 0)
+				superRanks[block >>> (SUPER_SHIFT - BLOCK_SHIFT)] = rank;
+			blockRanks[block] = (char) (rank - superRanks[block >>> (SUPER_SHIFT - BLOCK_SHIFT)]);
+			long word = (long) block * WORDS_PER_BLOCK;
+			for(long end = Math.min(words, word + WORDS_PER_BLOCK); word < end; ++word){
+				rank += Long.bitCount(word(word));
+			}
+		}
+		ones = rank;
+
+		oneSamples = new int[(int) ((ones + SAMPLE - 1) / SAMPLE)];
+		zeroSamples = new int[(int) ((size - ones + SAMPLE - 1) / SAMPLE)];
+		int block = 0;
+		for(int i = 0; i < oneSamples.length; ++i){
+			long target = (long) i * SAMPLE;
+			while(block + 1 < blocks && blockRank(block + 1) <= target)
+				++block;
+			oneSamples[i] = block;
+		}
+		block = 0;
+		for(int i = 0; i < zeroSamples.length; ++i){
+			long target = (long) i * SAMPLE;
+			while(block + 1 < blocks && ((long) (block + 1) << BLOCK_SHIFT) - blockRank(block + 1) <= target)
+				++block;
+			zeroSamples[i] = block;
+		}
+	}
+
+	/**
+	 * @param position Index of bit, 0 to {@link #size()} inclusive
+	 * @return Amount of 1 bits before given position
+	 */
+	public long rank1(long position){
+		if(position < 0 || position > size)
+			throw new IndexOutOfBoundsException("Position: " + position + ", size: " + size);
+		int block = (int) (position >>> BLOCK_SHIFT);
+		long rank = blockRank(block);
+		long word = (long) block * WORDS_PER_BLOCK;
+		for(long end = position >>> 6; word < end; ++word){
+			rank += Long.bitCount(word(word));
+		}
+		if((position & 63) != 0)
+			rank += Long.bitCount(word(word) >>> (64 - (position & 63)));
+		return rank;
+	}
+
+	/**
+	 * @param position Index of bit, 0 to {@link #size()} inclusive
+	 * @return Amount of 0 bits before given position
+	 */
+	public long rank0(long position){
+		return position - rank1(position);
+	}
+
+	/**
+	 * @param k Number of 1 bit, counting from 0
+	 * @return Position of k-th 1 bit
+	 */
+	public long select1(long k){
+		if(k < 0 || k >= ones)
+			throw new IndexOutOfBoundsException("k: " + k + ", ones: " + ones);
+		int sample = (int) (k / SAMPLE);
+		int low = oneSamples[sample];
+		int high = sample + 1 < oneSamples.length ? oneSamples[sample + 1] : blockRanks.length - 1;
+		while(low < high){
+			int middle = (low + high + 1) >>> 1;
+			if(blockRank(middle) <= k)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		k -= blockRank(low);
+		for(long word = (long) low * WORDS_PER_BLOCK;; ++word){
+			long bits = word(word);
+			int count = Long.bitCount(bits);
+			if(k < count)
+				return (word << 6) + select(bits, (int) k);
+			k -= count;
+		}
+	}
+
+	/**
+	 * @param k Number of 0 bit, counting from 0
+	 * @return Position of k-th 0 bit
+	 */
+	public long select0(long k){
+		if(k < 0 || k >= size - ones)
+			throw new IndexOutOfBoundsException("k: " + k + ", zeros: " + (size - ones));
+		int sample = (int) (k / SAMPLE);
+		int low = zeroSamples[sample];
+		int high = sample + 1 < zeroSamples.length ? zeroSamples[sample + 1] : blockRanks.length - 1;
+		while(low < high){
+			int middle = (low + high + 1) >>> 1;
+			if(((long) middle << BLOCK_SHIFT) - blockRank(middle) <= k)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		k -= ((long) low << BLOCK_SHIFT) - blockRank(low);
+		for(long word = (long) low * WORDS_PER_BLOCK;; ++word){
+			long bits = ~word(word);
+			int count = Long.bitCount(bits);
+			if(k < count)
+				return (word << 6) + select(bits, (int) k);
+			k -= count;
+		}
+	}
+
+	/**
+	 * @return Amount of 1 bits in indexed range
+	 */
+	public long ones(){
+		return ones;
+	}
+
+	/**
+	 * @return Amount of indexed bits
+	 */
+	public long size(){
+		return size;
+	}
+
+	/**
+	 * @return Indexed buffer
+	 */
+	public BitBuffer buffer(){
+		return buffer;
+	}
+
+	private long blockRank(int block){
+		return superRanks[block >>> (SUPER_SHIFT - BLOCK_SHIFT)] + blockRanks[block];
+	}
+
+	/**
+	 * @return 64 bits starting at given word, bits past the size read as 0
+	 */
+	private long word(long word){
+		long index = word << 6;
+		int bits = (int) Math.min(64, size - index);
+		return buffer.getStreamBits(index, bits) << (64 - bits);
+	}
+
+	/**
+	 * @return Position of k-th 1 bit in word, counting from MSB
+	 */
+	private static int select(long word, int k){
+		int shift = 0;
+		for(int count; k >= (count = Long.bitCount(word >>> 56)); shift += 8){
+			k -= count;
+			word <<= 8;
+		}
+		for(; k > 0; --k){
+			word ^= Long.highestOneBit(word);
+		}
+		return shift + Long.numberOfLeadingZeros(word);
+	}
+}
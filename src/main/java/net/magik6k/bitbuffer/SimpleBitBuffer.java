@@ -1,87 +1,1013 @@
 package net.magik6k.bitbuffer;
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
 abstract class SimpleBitBuffer extends BitBuffer{
 	private boolean read = false;
 	private long position;
 	protected long limit;
+	BitOrder bitOrder = BitOrder.MSB_FIRST;
+	private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+	private boolean swapBytes;
+	Object lease; //used by BitBufferPool
 	
 	protected abstract byte rawGet(long index);
 	protected abstract void rawSet(long index, byte value);
 	protected abstract long rawLength();
 	
+	/**
+	 * Reads 8 bytes starting at given byte index as big endian long.
+	 * Callers guarantee that whole window lies within {@link #rawLength()}
+	 * @param index Index of first byte
+	 * @return 64 bit window
+	 */
+	protected long rawGetLong(long index){
+		long result = 0;
+		for(int i = 0; i < 8; ++i){
+			result = (result << 8) | (rawGet(index + i) & 0xFFL);
+		}
+		return result;
+	}
+	
+	/**
+	 * Writes 8 bytes starting at given byte index in big endian order.
+	 * Callers guarantee that whole window lies within {@link #rawLength()}
+	 * @param index Index of first byte
+	 * @param value 64 bit window
+	 */
+	protected void rawSetLong(long index, long value){
+		for(int i = 7; i >= 0; --i){
+			rawSet(index + i, (byte) value);
+			value >>>= 8;
+		}
+	}
+	
+	/**
+	 * Reads 8 bytes starting at given byte index as little endian long.
+	 * Callers guarantee that whole window lies within {@link #rawLength()}
+	 * @param index Index of first byte
+	 * @return 64 bit window
+	 */
+	protected long rawGetLongLE(long index){
+		return Long.reverseBytes(rawGetLong(index));
+	}
+	
+	/**
+	 * Writes 8 bytes starting at given byte index in little endian order.
+	 * Callers guarantee that whole window lies within {@link #rawLength()}
+	 * @param index Index of first byte
+	 * @param value 64 bit window
+	 */
+	protected void rawSetLongLE(long index, long value){
+		rawSetLong(index, Long.reverseBytes(value));
+	}
+	
+	/**
+	 * Copies bytes from this buffer's storage into array
+	 * @param index Index of first byte
+	 * @param dst Destination array
+	 * @param offset Offset in destination array
+	 * @param length Amount of bytes to copy
+	 */
+	protected void rawGetBytes(long index, byte[] dst, int offset, int length){
+		for(int i = 0; i < length; ++i){
+			dst[offset + i] = rawGet(index + i);
+		}
+	}
+	
+	/**
+	 * Copies bytes from array into this buffer's storage
+	 * @param index Index of first byte
+	 * @param src Source array
+	 * @param offset Offset in source array
+	 * @param length Amount of bytes to copy
+	 */
+	protected void rawSetBytes(long index, byte[] src, int offset, int length){
+		for(int i = 0; i < length; ++i){
+			rawSet(index + i, src[offset + i]);
+		}
+	}
+	
+	/**
+	 * @return Array holding whole storage of this buffer, starting at byte 0, or null if there is no such array
+	 */
+	protected byte[] rawArray(){
+		return null;
+	}
+	
+	/**
+	 * @return ByteBuffer sharing whole storage of this buffer, or null if storage can't be exposed that way
+	 */
+	protected ByteBuffer rawView(){
+		byte[] array = rawArray();
+		return array != null ? ByteBuffer.wrap(array) : null;
+	}
+	
+	/**
+	 * Reads unsigned value of given width at given bit index, cursor is not affected
+	 * @param index Bit index of the first(most significant) bit
+	 * @param bits Width of the value, 1-64
+	 * @return Value read
+	 */
+	protected long getBits(long index, int bits){
+		long byteIndex = index >>> 3;
+		int shift = (int) (index & 7);
+		if(shift + bits > 64){
+			if(byteIndex + 9 <= rawLength())
+				return ((rawGetLong(byteIndex) << shift) | ((rawGet(byteIndex + 8) & 0xFFL) >>> (8 - shift))) >>> (64 - bits);
+			return (getBits(index, bits - 8) << 8) | getBits(index + bits - 8, 8);
+		}
+		if(byteIndex + 8 <= rawLength())
+			return (rawGetLong(byteIndex) << shift) >>> (64 - bits);
+		
+		//End of storage, touch only bytes covered by the value
+		long last = (index + bits - 1) >>> 3;
+		long window = 0;
+		for(long i = byteIndex; i <= last; ++i){
+			window = (window << 8) | (rawGet(i) & 0xFFL);
+		}
+		return (window >>> (((last + 1) << 3) - index - bits)) & (-1L >>> (64 - bits));
+	}
+	
+	/**
+	 * Writes given amount of least significant bits of value at given bit index, cursor is not affected
+	 * @param index Bit index of the first(most significant) bit
+	 * @param value Value to write
+	 * @param bits Width of the value, 1-64
+	 */
+	protected void putBits(long index, long value, int bits){
+		long byteIndex = index >>> 3;
+		int shift = (int) (index & 7);
+		if(shift + bits > 64){
+			if(byteIndex + 9 <= rawLength()){
+				int rest = shift + bits - 64;
+				long mask = -1L >>> shift;
+				rawSetLong(byteIndex, (rawGetLong(byteIndex) & ~mask) | ((value >>> rest) & mask));
+				rawSet(byteIndex + 8, (byte) ((rawGet(byteIndex + 8) & (0xFF >>> rest)) | (value << (8 - rest))));
+				return;
+			}
+			putBits(index, value >>> 8, bits - 8);
+			putBits(index + bits - 8, value, 8);
+			return;
+		}
+		if(byteIndex + 8 <= rawLength()){
+			int low = 64 - shift - bits;
+			long mask = (-1L >>> (64 - bits)) << low;
+			rawSetLong(byteIndex, (rawGetLong(byteIndex) & ~mask) | ((value << low) & mask));
+			return;
+		}
+		
+		//End of storage, touch only bytes covered by the value
+		long last = (index + bits - 1) >>> 3;
+		int low = (int) (((last + 1) << 3) - index - bits);
+		long mask = (-1L >>> (64 - bits)) << low;
+		long window = 0;
+		for(long i = byteIndex; i <= last; ++i){
+			window = (window << 8) | (rawGet(i) & 0xFFL);
+		}
+		window = (window & ~mask) | ((value << low) & mask);
+		for(long i = last; i >= byteIndex; --i){
+			rawSet(i, (byte) window);
+			window >>>= 8;
+		}
+	}
+	
+	/**
+	 * Reads value of given width at given bit index in LSB-first order, cursor is not affected
+	 * @param index Bit index of the first(least significant) bit, bit 0 is LSB of byte 0
+	 * @param bits Width of the value, 1-64
+	 * @return Value read
+	 */
+	protected long getBitsLsb(long index, int bits){
+		long byteIndex = index >>> 3;
+		int shift = (int) (index & 7);
+		long mask = -1L >>> (64 - bits);
+		if(byteIndex + 8 <= rawLength()){
+			long window = rawGetLongLE(byteIndex) >>> shift;
+			if(shift + bits > 64)
+				window |= (rawGet(byteIndex + 8) & 0xFFL) << (64 - shift);
+			return window & mask;
+		}
+		
+		//End of storage, touch only bytes covered by the value
+		if(shift + bits > 64){
+			int low = 8 - shift;
+			return getBitsLsb(index, low) | (getBitsLsb(index + low, bits - low) << low);
+		}
+		long window = 0;
+		for(long i = (index + bits - 1) >>> 3; i >= byteIndex; --i){
+			window = (window << 8) | (rawGet(i) & 0xFFL);
+		}
+		return (window >>> shift) & mask;
+	}
+	
+	/**
+	 * Writes given amount of least significant bits of value at given bit index in LSB-first order, cursor is not affected
+	 * @param index Bit index of the first(least significant) bit, bit 0 is LSB of byte 0
+	 * @param value Value to write
+	 * @param bits Width of the value, 1-64
+	 */
+	protected void putBitsLsb(long index, long value, int bits){
+		long byteIndex = index >>> 3;
+		int shift = (int) (index & 7);
+		long mask = -1L >>> (64 - bits);
+		if(byteIndex + 8 <= rawLength()){
+			if(shift + bits <= 64){
+				mask <<= shift;
+				rawSetLongLE(byteIndex, (rawGetLongLE(byteIndex) & ~mask) | ((value << shift) & mask));
+			}else{
+				int rest = shift + bits - 64;
+				rawSetLongLE(byteIndex, (rawGetLongLE(byteIndex) & (-1L >>> (64 - shift))) | (value << shift));
+				rawSet(byteIndex + 8, (byte) ((rawGet(byteIndex + 8) & (0xFF << rest)) | ((value >>> (64 - shift)) & (0xFF >>> (8 - rest)))));
+			}
+			return;
+		}
+		
+		//End of storage, touch only bytes covered by the value
+		if(shift + bits > 64){
+			int low = 8 - shift;
+			putBitsLsb(index, value, low);
+			putBitsLsb(index + low, value >>> low, bits - low);
+			return;
+		}
+		long last = (index + bits - 1) >>> 3;
+		long window = 0;
+		for(long i = last; i >= byteIndex; --i){
+			window = (window << 8) | (rawGet(i) & 0xFFL);
+		}
+		mask <<= shift;
+		window = (window & ~mask) | ((value << shift) & mask);
+		for(long i = byteIndex; i <= last; ++i){
+			rawSet(i, (byte) window);
+			window >>>= 8;
+		}
+	}
+	
+	/**
+	 * Copies bit range between buffers, cursors are not affected
+	 * @param src Source buffer
+	 * @param srcIndex First bit to copy
+	 * @param index First bit to write to in this buffer
+	 * @param length Amount of bits to copy
+	 */
+	protected void copyBits(SimpleBitBuffer src, long srcIndex, long index, long length){
+		BitOrder order = bitOrder;
+		//Views share storage with their parent, compare positions within the shared storage
+		boolean shared = src.storage() == storage();
+		long from = src.storageOffset() + srcIndex;
+		long to = storageOffset() + index;
+		if(src.bitOrder != order){
+			if(shared && length > 0 && from >>> 3 <= (to + length - 1) >>> 3 && to >>> 3 <= (from + length - 1) >>> 3){
+				//Orders map bits within a byte differently, any shared byte may be overwritten before it's read
+				SimpleBitBuffer copy = new LongArrayBitBuffer(length);
+				copy.bitOrder = src.bitOrder;
+				copy.copyBits(src, srcIndex, 0, length);
+				src = copy;
+				srcIndex = 0;
+			}
+			//Keep stream order, values read in one order are reversed in the other one
+			for(; length > 0; length -= 56){
+				int bits = (int) Math.min(56, length);
+				long value = src.bitOrder.toStream(src.bitOrder.get(src, srcIndex, bits), bits);
+				order.put(this, index, order.toStream(value, bits), bits);
+				srcIndex += 56;
+				index += 56;
+			}
+			return;
+		}
+		
+		if(shared && from < to && to < from + length){
+			//Overlapping, copy backwards so that source is read before it's overwritten
+			long rest = length;
+			for(; rest >= 56; rest -= 56){
+				order.put(this, index + rest - 56, order.get(src, srcIndex + rest - 56, 56), 56);
+			}
+			if(rest > 0)
+				order.put(this, index, order.get(src, srcIndex, (int) rest), (int) rest);
+			return;
+		}
+		
+		if(((srcIndex | index) & 7) == 0 && (!shared || from + length <= to || to + length <= from)){
+			long bytes = length >>> 3;
+			copyBytes(src, srcIndex >>> 3, index >>> 3, bytes);
+			srcIndex += bytes << 3;
+			index += bytes << 3;
+			length &= 7;
+		}
+		
+		//56 bit chunks keep both windows within single long when offsets aren't aligned
+		for(; length >= 56; length -= 56){
+			order.put(this, index, order.get(src, srcIndex, 56), 56);
+			srcIndex += 56;
+			index += 56;
+		}
+		if(length > 0)
+			order.put(this, index, order.get(src, srcIndex, (int) length), (int) length);
+	}
+	
+	private void copyBytes(SimpleBitBuffer src, long srcIndex, long index, long length){
+		if(length == 0)
+			return;
+		byte[] dstArray = rawArray();
+		if(dstArray != null){
+			src.rawGetBytes(srcIndex, dstArray, (int) index, (int) length);
+			return;
+		}
+		byte[] srcArray = src.rawArray();
+		if(srcArray != null){
+			rawSetBytes(index, srcArray, (int) srcIndex, (int) length);
+			return;
+		}
+		if(src instanceof DirectBitBuffer && this instanceof DirectBitBuffer){
+			DirectBitBuffer.copy((DirectBitBuffer) src, srcIndex, (DirectBitBuffer) this, index, length);
+			return;
+		}
+		byte[] chunk = new byte[(int) Math.min(length, 8192)];
+		while(length > 0){
+			int n = (int) Math.min(length, chunk.length);
+			src.rawGetBytes(srcIndex, chunk, 0, n);
+			rawSetBytes(index, chunk, 0, n);
+			srcIndex += n;
+			index += n;
+			length -= n;
+		}
+	}
+	
+	@Override
+	public BitBuffer put(BitBuffer src, long srcBitOffset, long bitLength) {
+		if(!(src instanceof SimpleBitBuffer))
+			return super.put(src, srcBitOffset, bitLength);
+		if(srcBitOffset < 0 || bitLength < 0 || srcBitOffset + bitLength > src.size())
+			throw new IndexOutOfBoundsException();
+		ensureCapacity(position + bitLength);
+		copyBits((SimpleBitBuffer) src, srcBitOffset, position, bitLength);
+		position += bitLength;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer put(ByteBuffer buffer) {
+		long bits = buffer.remaining() * 8L;
+		ensureCapacity(position + bits);
+		SimpleBitBuffer src = new ByteBufferBitBuffer(buffer);
+		src.bitOrder = bitOrder;
+		copyBits(src, 0, position, bits);
+		buffer.position(buffer.limit());
+		position += bits;
+		return this;
+	}
+	
+	@Override
+	public ByteBuffer asByteBuffer() {
+		ByteBuffer view = dataView();
+		return view != null ? view : super.asByteBuffer();
+	}
+	
+	/**
+	 * @return View of storage bytes up to the limit, or null if storage can't be exposed
+	 */
+	private ByteBuffer dataView(){
+		ByteBuffer view = rawView();
+		if(view == null)
+			return null;
+		view.limit((int) ((limit() + 7) >>> 3)).position(0);
+		return view.slice();
+	}
+	
+	@Override
+	public BitBuffer putToByteBuffer(ByteBuffer bb) {
+		ByteBuffer view = dataView();
+		if(view != null){
+			bb.put(view);
+		}else if(bb.hasArray()){
+			//Same bytes as asByteArray, without the intermediate array
+			long end = canRead() ? limit() : position();
+			int length = (int) rawLength();
+			if(bb.remaining() < length)
+				throw new BufferOverflowException();
+			int whole = (int) (end >>> 3);
+			rawGetBytes(0, bb.array(), bb.arrayOffset() + bb.position(), whole);
+			bb.position(bb.position() + whole);
+			if((end & 7) != 0){
+				int bits = (int) (end & 7);
+				int value = getIntUnsigned(end - bits, bits);
+				bb.put((byte) (bitOrder == BitOrder.LSB_FIRST ? value : value << (8 - bits)));
+				++whole;
+			}
+			for(; whole < length; ++whole){
+				bb.put((byte) 0);
+			}
+		}else{
+			super.putToByteBuffer(bb);
+		}
+		return this;
+	}
+	
+	@Override
+	public int writeTo(WritableByteChannel channel) throws IOException {
+		if((position & 7) != 0)
+			throw new IllegalStateException("Position is not byte aligned");
+		long start = position >>> 3;
+		long end = (limit() + 7) >>> 3;
+		int written = 0;
+		ByteBuffer view = rawView();
+		if(view != null){
+			view.limit((int) end).position((int) start);
+			written = channel.write(view);
+		}else{
+			byte[] chunk = new byte[(int) Math.min(end - start, 8192)];
+			ByteBuffer wrapped = ByteBuffer.wrap(chunk);
+			while(start + written < end){
+				int n = (int) Math.min(end - start - written, chunk.length);
+				rawGetBytes(start + written, chunk, 0, n);
+				wrapped.clear().limit(n);
+				int w = channel.write(wrapped);
+				written += w;
+				if(w < n)
+					break;
+			}
+		}
+		position = Math.min(limit(), (start + written) << 3);
+		return written;
+	}
+	
+	@Override
+	public int readFrom(ReadableByteChannel channel) throws IOException {
+		if((position & 7) != 0)
+			throw new IllegalStateException("Position is not byte aligned");
+		long start = position >>> 3;
+		long end = limit() >>> 3;
+		int read;
+		ByteBuffer view = rawView();
+		if(view != null){
+			view.limit((int) end).position((int) start);
+			read = channel.read(view);
+		}else{
+			byte[] chunk = new byte[(int) Math.min(end - start, 8192)];
+			ByteBuffer wrapped = ByteBuffer.wrap(chunk);
+			read = 0;
+			while(start + read < end){
+				int n = (int) Math.min(end - start - read, chunk.length);
+				wrapped.clear().limit(n);
+				int r = channel.read(wrapped);
+				if(r <= 0){
+					if(read == 0)
+						read = r;
+					break;
+				}
+				rawSetBytes(start + read, chunk, 0, r);
+				read += r;
+				if(r < n)
+					break;
+			}
+		}
+		if(read > 0)
+			position += read * 8L;
+		return read;
+	}
+	
+	@Override
+	public CompletableFuture<Integer> writeTo(AsynchronousFileChannel channel, long filePosition, long bitIndex, long bitLength) {
+		checkRegion(bitIndex, bitLength);
+		return AsyncTransfer.write(this, channel, filePosition, bitIndex >>> 3, (int) ((bitLength + 7) >>> 3));
+	}
+	
+	@Override
+	public CompletableFuture<Integer> readFrom(AsynchronousFileChannel channel, long filePosition, long bitIndex, long bitLength) {
+		checkRegion(bitIndex, bitLength);
+		if(isReadOnly())
+			throw new ReadOnlyBufferException();
+		return AsyncTransfer.read(this, channel, filePosition, bitIndex >>> 3, (int) ((bitLength + 7) >>> 3));
+	}
+	
+	private void checkRegion(long bitIndex, long bitLength){
+		if((bitIndex & 7) != 0)
+			throw new IllegalArgumentException("Index is not byte aligned");
+		if(bitLength < 0 || ((bitLength + 7) >>> 3) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid length: " + bitLength);
+		if(bitIndex < 0 || ((bitIndex + bitLength + 7) >>> 3) > rawLength())
+			throw new IndexOutOfBoundsException("Index: " + bitIndex + ", length: " + bitLength + ", size: " + size());
+	}
+	
+	@Override
+	ByteBuffer byteView(long start, long end) {
+		ByteBuffer view = rawView();
+		if(view != null)
+			view.limit((int) end).position((int) start);
+		return view;
+	}
+	
+	@Override
+	public BitBuffer putString(String s, Charset charset) {
+		if((position & 7) != 0 || rawArray() == null || !asciiCompatible(charset))
+			return super.putString(s, charset);
+		int ascii = 0;
+		while(ascii < s.length() && s.charAt(ascii) < 0x80){
+			++ascii;
+		}
+		ensureCapacity(position + ascii * 8L);
+		byte[] array = rawArray();
+		if(array == null)
+			return super.putString(s, charset);
+		int start = (int) (position >>> 3);
+		for(int i = 0; i < ascii; ++i){
+			array[start + i] = (byte) s.charAt(i);
+		}
+		position += ascii * 8L;
+		return ascii == s.length() ? this : putString(s, ascii, charset);
+	}
+	
+	@Override
+	public String getString(int length, Charset charset) {
+		byte[] array = rawArray();
+		if((position & 7) != 0 || array == null)
+			return super.getString(length, charset);
+		if(position + length * 8L > limit())
+			throw new BufferUnderflowException();
+		String s = new String(array, (int) (position >>> 3), length, charset);
+		position += length * 8L;
+		return s;
+	}
+	
+	@Override
+	public BitBuffer put(byte[] array, int offset, int limit) {
+		if((position & 7) != 0)
+			return super.put(array, offset, limit);
+		ensureCapacity(position + (limit - offset) * 8L);
+		rawSetBytes(position >>> 3, array, offset, limit - offset);
+		position += (limit - offset) * 8L;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer put(int[] array, int offset, int limit) {
+		if(swapBytes)
+			return super.put(array, offset, limit);
+		return put(array, offset, limit, 32);
+	}
+	
+	@Override
+	public BitBuffer put(int[] array, int offset, int limit, int bits) {
+		if(bits == 0)return this;
+		ensureCapacity(position + (long) (limit - offset) * bits);
+		putPacked(position, array, offset, limit, bits);
+		position += (long) (limit - offset) * bits;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer put(long[] array, int offset, int limit) {
+		if(swapBytes)
+			return super.put(array, offset, limit);
+		return put(array, offset, limit, 64);
+	}
+	
+	@Override
+	public BitBuffer put(long[] array, int offset, int limit, int bits) {
+		if(bits == 0)return this;
+		ensureCapacity(position + (long) (limit - offset) * bits);
+		putPacked(position, array, offset, limit, bits);
+		position += (long) (limit - offset) * bits;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer putParallel(int[] array, int offset, int limit, int bits, ForkJoinPool pool) {
+		if(bits == 0)return this;
+		ensureCapacity(position + (long) (limit - offset) * bits);
+		ParallelBulk.put(this, position, array, offset, limit, bits, pool);
+		position += (long) (limit - offset) * bits;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer putParallel(long[] array, int offset, int limit, int bits, ForkJoinPool pool) {
+		if(bits == 0)return this;
+		ensureCapacity(position + (long) (limit - offset) * bits);
+		ParallelBulk.put(this, position, array, offset, limit, bits, pool);
+		position += (long) (limit - offset) * bits;
+		return this;
+	}
+	
+	/**
+	 * Writes values of given width starting at given bit index, cursor is not affected
+	 */
+	void putPacked(long index, int[] array, int offset, int limit, int bits){
+		//Kernels work on longs, blocks are widened first
+		long[] values = new long[BitPacking.BLOCK];
+		long[] words = new long[bits];
+		for(; offset + BitPacking.BLOCK <= limit; offset += BitPacking.BLOCK){
+			for(int i = 0; i < BitPacking.BLOCK; ++i){
+				values[i] = array[offset + i];
+			}
+			bitOrder.pack(values, 0, words, bits);
+			for(long word : words){
+				bitOrder.put(this, index, word, 64);
+				index += 64;
+			}
+		}
+		for(; offset < limit; ++offset){
+			bitOrder.put(this, index, array[offset], bits);
+			index += bits;
+		}
+	}
+	
+	/**
+	 * Writes values of given width starting at given bit index, cursor is not affected
+	 */
+	void putPacked(long index, long[] array, int offset, int limit, int bits){
+		if(bits < 64){
+			long[] words = new long[bits];
+			for(; offset + BitPacking.BLOCK <= limit; offset += BitPacking.BLOCK){
+				bitOrder.pack(array, offset, words, bits);
+				for(long word : words){
+					bitOrder.put(this, index, word, 64);
+					index += 64;
+				}
+			}
+		}
+		for(; offset < limit; ++offset){
+			bitOrder.put(this, index, array[offset], bits);
+			index += bits;
+		}
+	}
+	
+	@Override
+	public byte[] get(byte[] dst, int offset, int limit) {
+		if((position & 7) != 0)
+			return super.get(dst, offset, limit);
+		rawGetBytes(position >>> 3, dst, offset, limit - offset);
+		position += (limit - offset) * 8L;
+		return dst;
+	}
+	
+	@Override
+	public int[] get(int[] dst, int offset, int limit) {
+		if(swapBytes)
+			return super.get(dst, offset, limit);
+		return get(dst, offset, limit, 32);
+	}
+	
+	@Override
+	public int[] get(int[] dst, int offset, int limit, int bits) {
+		if(bits == 0)
+			return super.get(dst, offset, limit, bits);
+		getPacked(position, dst, offset, limit, bits);
+		position += (long) (limit - offset) * bits;
+		return dst;
+	}
+	
+	@Override
+	public long[] get(long[] dst, int offset, int limit) {
+		if(swapBytes)
+			return super.get(dst, offset, limit);
+		return get(dst, offset, limit, 64);
+	}
+	
+	@Override
+	public long[] get(long[] dst, int offset, int limit, int bits) {
+		if(bits == 0)
+			return super.get(dst, offset, limit, bits);
+		getPacked(position, dst, offset, limit, bits);
+		position += (long) (limit - offset) * bits;
+		return dst;
+	}
+	
+	@Override
+	public int[] getParallel(int[] dst, int offset, int limit, int bits, ForkJoinPool pool) {
+		if(bits == 0)
+			return super.get(dst, offset, limit, bits);
+		ParallelBulk.get(this, position, dst, offset, limit, bits, pool);
+		position += (long) (limit - offset) * bits;
+		return dst;
+	}
+	
+	@Override
+	public long[] getParallel(long[] dst, int offset, int limit, int bits, ForkJoinPool pool) {
+		if(bits == 0)
+			return super.get(dst, offset, limit, bits);
+		ParallelBulk.get(this, position, dst, offset, limit, bits, pool);
+		position += (long) (limit - offset) * bits;
+		return dst;
+	}
+	
+	/**
+	 * Reads signed values of given width starting at given bit index, cursor is not affected
+	 */
+	void getPacked(long index, int[] dst, int offset, int limit, int bits){
+		//Kernels work on longs, blocks are narrowed afterwards
+		long[] values = new long[BitPacking.BLOCK];
+		long[] words = new long[bits];
+		for(; offset + BitPacking.BLOCK <= limit; offset += BitPacking.BLOCK){
+			for(int i = 0; i < bits; ++i){
+				words[i] = bitOrder.get(this, index, 64);
+				index += 64;
+			}
+			bitOrder.unpack(words, values, 0, bits);
+			for(int i = 0; i < BitPacking.BLOCK; ++i){
+				dst[offset + i] = (int) values[i];
+			}
+		}
+		for(; offset < limit; ++offset){
+			dst[offset] = (int) ((bitOrder.get(this, index, bits) << (64 - bits)) >> (64 - bits));
+			index += bits;
+		}
+	}
+	
+	/**
+	 * Reads signed values of given width starting at given bit index, cursor is not affected
+	 */
+	void getPacked(long index, long[] dst, int offset, int limit, int bits){
+		if(bits < 64){
+			long[] words = new long[bits];
+			for(; offset + BitPacking.BLOCK <= limit; offset += BitPacking.BLOCK){
+				for(int i = 0; i < bits; ++i){
+					words[i] = bitOrder.get(this, index, 64);
+					index += 64;
+				}
+				bitOrder.unpack(words, dst, offset, bits);
+			}
+		}
+		for(; offset < limit; ++offset){
+			dst[offset] = (bitOrder.get(this, index, bits) << (64 - bits)) >> (64 - bits);
+			index += bits;
+		}
+	}
+	
 	@Override
 	public BitBuffer putBoolean(boolean b) {
-		rawSet(position/8, (byte) ((rawGet(position/8) & ~(0x80 >>> (position % 8))) + ((b?0x80:0) >>> (position % 8))) );
+		bitOrder.put(this, position, b ? 1 : 0, 1);
 		++position;
 		return this;
 	}
 
 	@Override
 	public BitBuffer putByte(byte b) {
-		byte old = (byte) (rawGet(position/8) & (byte)~(0xFF >>> (position%8)));
-		rawSet(position/8, (byte) (old | (byte)((b&0xFF) >>> (position % 8))));
-		if(position % 8 > 0)
-			rawSet((position/8)+1, (byte) ((b&0xFF) << (8-(position % 8))));
+		bitOrder.put(this, position, b, 8);
 		position += 8;
 		return this;
 	}
 	
 	@Override
 	public BitBuffer putByte(byte b, int bits) {
-		b = (byte) (0xFF & ((b & (0xFF >>> (8 - bits))) << (8-bits)));
-		rawSet(position/8, (byte) (0xFF & ((rawGet(position/8) & (0xFF << (8-position%8))) | ((b&0xFF) >>> (position%8)) )));
-		if(8-(position % 8) < bits)
-			rawSet((position/8)+1, (byte) (0xFF & ((b&0xFF) << (8-position % 8))));
+		if(bits == 0)return this;
+		bitOrder.put(this, position, b, bits);
+		position += bits;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer putInt(int i) {
+		bitOrder.put(this, position, swapBytes ? Integer.reverseBytes(i) : i, 32);
+		position += 32;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer putInt(int i, int bits) {
+		if(bits == 0)return this;
+		bitOrder.put(this, position, i, bits);
+		position += bits;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer putLong(long l) {
+		bitOrder.put(this, position, swapBytes ? Long.reverseBytes(l) : l, 64);
+		position += 64;
+		return this;
+	}
+	
+	@Override
+	public BitBuffer putLong(long l, int bits) {
+		if(bits == 0)return this;
+		bitOrder.put(this, position, l, bits);
 		position += bits;
 		return this;
 	}
 
 	@Override
 	public boolean getBoolean() {
-		boolean result = (rawGet(position/8) & (0x80 >>> (position % 8))) > 0 ;
+		boolean result = bitOrder.get(this, position, 1) != 0;
 		++position;
 		return result;
 	}
 
 	@Override
 	public byte getByte() {
-		byte b = (byte) ((rawGet(position/8) & (0xFF >>> (position % 8))) << (position % 8));
-		b = position % 8 > 0 ? (byte) (b | (((0xFF & rawGet((position/8)+1)) >>> (8-(position % 8))))) : b;
+		byte b = (byte) bitOrder.get(this, position, 8);
 		position += 8;
 		return b;
 	}
 
 	@Override
 	public byte getByte(int bits) {
-		boolean sign = (rawGet(position/8) & (0x80 >>> (position % 8))) > 0;
-		position++;
-		bits--;
-		
-		short mask = (short) (((0xFF00 << (8 - bits)) & 0xFFFF) >>> (position % 8));
-		
-		byte b = (byte) ((rawGet(position/8) & ((mask & 0xFF00) >>> 8)) << (position % 8));
-		if(8-(position % 8) < bits)
-			b = (byte) (b | ((0xFF & (rawGet((position/8)+1) & (mask & 0x00FF))) >>> (bits - ((position % 8) + bits - 8))));
-
-		b = (byte) ((b&0xFF) >>> (8-bits));
-		position += bits;
-		
-		return (byte) (sign ? ((0xFF << bits)&0xFF) | b : b);
+		return (byte) getLong(bits);
 	}
 	
 	@Override
 	public byte getByteUnsigned(int bits) {
-		short mask = (short) (((0xFF00 << (8 - bits)) & 0xFFFF) >>> (position % 8));
-		
-		byte b = (byte) ((rawGet(position/8) & ((mask & 0xFF00) >>> 8)) << (position % 8));
-		if(8-(position % 8) < bits)
-			b = (byte) (b | ((0xFF & (rawGet((position/8)+1) & (mask & 0x00FF))) >>> (bits - ((position % 8) + bits - 8))));
-
-		b = (byte) ((b&0xFF) >>> (8-bits));
+		return (byte) getLongUnsigned(bits);
+	}
+	
+	@Override
+	public int getInt() {
+		int i = (int) bitOrder.get(this, position, 32);
+		position += 32;
+		return swapBytes ? Integer.reverseBytes(i) : i;
+	}
+	
+	@Override
+	public int getInt(int bits) {
+		return (int) getLong(bits);
+	}
+	
+	@Override
+	public int getIntUnsigned(int bits) {
+		return (int) getLongUnsigned(bits);
+	}
+	
+	@Override
+	public long getLong() {
+		long l = bitOrder.get(this, position, 64);
+		position += 64;
+		return swapBytes ? Long.reverseBytes(l) : l;
+	}
+	
+	@Override
+	public long getLong(int bits) {
+		if(bits == 0)return 0;
+		long l = bitOrder.get(this, position, bits);
 		position += bits;
-		return b;
+		return (l << (64 - bits)) >> (64 - bits);
+	}
+	
+	@Override
+	public long getLongUnsigned(int bits) {
+		if(bits == 0)return 0;
+		long l = bitOrder.get(this, position, bits);
+		position += bits;
+		return l;
 	}
 
+	@Override
+	public boolean getBoolean(long bitIndex) {
+		checkIndex(bitIndex, 1);
+		return bitOrder.get(this, bitIndex, 1) != 0;
+	}
+	
+	@Override
+	public long getLongUnsigned(long bitIndex, int bits) {
+		if(bits == 0)return 0;
+		checkIndex(bitIndex, bits);
+		return bitOrder.get(this, bitIndex, bits);
+	}
+	
+	@Override
+	public BitBuffer putBoolean(long bitIndex, boolean b) {
+		checkIndex(bitIndex, 1);
+		bitOrder.put(this, bitIndex, b ? 1 : 0, 1);
+		return this;
+	}
+	
+	@Override
+	public BitBuffer putLong(long bitIndex, long value, int bits) {
+		if(bits == 0)return this;
+		checkIndex(bitIndex, bits);
+		bitOrder.put(this, bitIndex, value, bits);
+		return this;
+	}
+	
+	@Override
+	public long peekBits(int bits) {
+		int available = (int) Math.min(bits, limit() - position);
+		if(available <= 0)
+			return 0;
+		long value = bitOrder.get(this, position, available);
+		return bitOrder == BitOrder.MSB_FIRST ? value << (bits - available) : value;
+	}
+	
+	@Override
+	long peekWindow() {
+		int bits = (int) Math.min(64, limit() - position);
+		return bits > 0 ? bitOrder.toStream(bitOrder.get(this, position, bits), bits) << (64 - bits) : 0;
+	}
+	
+	@Override
+	long getZeroRun() {
+		long run = 0;
+		for(;;){
+			int bits = (int) Math.min(64, limit() - position);
+			if(bits <= 0)
+				throw new BufferUnderflowException();
+			long window = bitOrder.toStream(bitOrder.get(this, position, bits), bits) << (64 - bits);
+			if(window != 0){
+				int zeros = Long.numberOfLeadingZeros(window);
+				position += zeros + 1;
+				return run + zeros;
+			}
+			run += bits;
+			position += bits;
+		}
+	}
+
+	@Override
+	public BitOrder bitOrder() {
+		return bitOrder;
+	}
+	
+	@Override
+	public BitBuffer bitOrder(BitOrder order) {
+		if(order == null)
+			throw new NullPointerException();
+		bitOrder = order;
+		byteOrder = order.naturalByteOrder();
+		swapBytes = false;
+		return this;
+	}
+	
+	@Override
+	public ByteOrder order() {
+		return byteOrder;
+	}
+	
+	@Override
+	public BitBuffer order(ByteOrder order) {
+		if(order == null)
+			throw new NullPointerException();
+		byteOrder = order;
+		swapBytes = order != bitOrder.naturalByteOrder();
+		return this;
+	}
+	
+	@Override
+	public BitBuffer slice(long bitOffset, long bitLength) {
+		if(bitOffset < 0 || bitLength < 0 || bitOffset + bitLength > size())
+			throw new IndexOutOfBoundsException();
+		SlicedBitBuffer slice = view(bitOffset, bitLength, isReadOnly());
+		slice.setState(read, 0, bitLength);
+		slice.bitOrder(bitOrder).order(byteOrder);
+		return slice;
+	}
+	
+	@Override
+	public BitBuffer duplicate() {
+		SlicedBitBuffer duplicate = view(0, size(), isReadOnly());
+		duplicate.setState(read, position, limit);
+		duplicate.bitOrder(bitOrder).order(byteOrder);
+		return duplicate;
+	}
+	
+	@Override
+	public BitBuffer asReadOnlyBuffer() {
+		SlicedBitBuffer duplicate = view(0, size(), true);
+		duplicate.setState(read, position, limit);
+		duplicate.bitOrder(bitOrder).order(byteOrder);
+		return duplicate;
+	}
+	
+	/**
+	 * Creates view sharing storage of this buffer
+	 * @param offset First bit of the view
+	 * @param length Length of the view in bits
+	 * @param readOnly Whether the view rejects writes
+	 * @return New view, in write mode at position 0
+	 */
+	SlicedBitBuffer view(long offset, long length, boolean readOnly){
+		return new SlicedBitBuffer(this, offset, length, readOnly);
+	}
+	
+	/**
+	 * @return Buffer owning storage of this buffer
+	 */
+	SimpleBitBuffer storage(){
+		return this;
+	}
+	
+	/**
+	 * @return Bit index of this buffer's first bit within {@link #storage()}
+	 */
+	long storageOffset(){
+		return 0;
+	}
+	
+	void setState(boolean read, long position, long limit){
+		this.read = read;
+		this.position = position;
+		this.limit = limit;
+	}
+	
 	@Override
 	public BitBuffer flip() {
 		read = !read;
@@ -103,12 +1029,12 @@ abstract class SimpleBitBuffer extends BitBuffer{
 
 	@Override
 	public long size() {
-		return rawLength();
+		return rawLength() * 8;
 	}
 
 	@Override
 	public long limit() {
-		return read ? limit : rawLength();
+		return read ? limit : size();
 	}
 
 	@Override
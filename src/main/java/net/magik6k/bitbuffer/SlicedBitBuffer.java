@@ -0,0 +1,151 @@
+package net.magik6k.bitbuffer;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * View of bit range of another buffer's storage
+ */
+class SlicedBitBuffer extends SimpleBitBuffer{
+	private final SimpleBitBuffer parent;
+	private final long offset;
+	private final long length;
+	private final boolean readOnly;
+	
+	protected SlicedBitBuffer(SimpleBitBuffer parent, long offset, long length) {
+		this(parent, offset, length, false);
+	}
+	
+	protected SlicedBitBuffer(SimpleBitBuffer parent, long offset, long length, boolean readOnly) {
+		this.parent = parent;
+		this.offset = offset;
+		this.length = length;
+		this.readOnly = readOnly;
+		limit = length;
+	}
+	
+	@Override
+	SlicedBitBuffer view(long offset, long length, boolean readOnly) {
+		return parent.view(this.offset + offset, length, readOnly);
+	}
+	
+	@Override
+	SimpleBitBuffer storage() {
+		return parent.storage();
+	}
+	
+	@Override
+	long storageOffset() {
+		return parent.storageOffset() + offset;
+	}
+	
+	@Override
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+	
+	@Override
+	public long size() {
+		return length;
+	}
+	
+	@Override
+	public int readFrom(ReadableByteChannel channel) throws IOException {
+		if(readOnly)
+			throw new ReadOnlyBufferException();
+		return super.readFrom(channel);
+	}
+
+	@Override
+	protected byte rawGet(long index) {
+		int bits = (int) Math.min(8, length - index * 8);
+		if(bits <= 0)
+			throw new BufferOverflowException();
+		if(bitOrder == BitOrder.LSB_FIRST)
+			return (byte) parent.getBitsLsb(offset + index * 8, bits);
+		return (byte) (parent.getBits(offset + index * 8, bits) << (8 - bits));
+	}
+
+	@Override
+	protected void rawSet(long index, byte value) {
+		if(readOnly)
+			throw new ReadOnlyBufferException();
+		int bits = (int) Math.min(8, length - index * 8);
+		if(bits <= 0)
+			throw new BufferOverflowException();
+		if(bitOrder == BitOrder.LSB_FIRST)
+			parent.putBitsLsb(offset + index * 8, value, bits);
+		else
+			parent.putBits(offset + index * 8, (value & 0xFF) >>> (8 - bits), bits);
+	}
+	
+	@Override
+	protected long getBits(long index, int bits) {
+		if(index + bits > length)
+			throw new BufferOverflowException();
+		return parent.getBits(offset + index, bits);
+	}
+	
+	@Override
+	protected void putBits(long index, long value, int bits) {
+		if(readOnly)
+			throw new ReadOnlyBufferException();
+		if(index + bits > length)
+			throw new BufferOverflowException();
+		parent.putBits(offset + index, value, bits);
+	}
+	
+	@Override
+	protected long getBitsLsb(long index, int bits) {
+		if(index + bits > length)
+			throw new BufferOverflowException();
+		return parent.getBitsLsb(offset + index, bits);
+	}
+	
+	@Override
+	protected void putBitsLsb(long index, long value, int bits) {
+		if(readOnly)
+			throw new ReadOnlyBufferException();
+		if(index + bits > length)
+			throw new BufferOverflowException();
+		parent.putBitsLsb(offset + index, value, bits);
+	}
+	
+	@Override
+	protected void rawGetBytes(long index, byte[] dst, int offset, int length) {
+		if((this.offset & 7) == 0 && (index + length) * 8 <= this.length){
+			parent.rawGetBytes((this.offset >>> 3) + index, dst, offset, length);
+		}else{
+			super.rawGetBytes(index, dst, offset, length);
+		}
+	}
+	
+	@Override
+	protected void rawSetBytes(long index, byte[] src, int offset, int length) {
+		if(readOnly)
+			throw new ReadOnlyBufferException();
+		if((this.offset & 7) == 0 && (index + length) * 8 <= this.length){
+			parent.rawSetBytes((this.offset >>> 3) + index, src, offset, length);
+		}else{
+			super.rawSetBytes(index, src, offset, length);
+		}
+	}
+	
+	@Override
+	protected ByteBuffer rawView() {
+		ByteBuffer view = parent.rawView();
+		//Partial bytes at either end are shared with bits outside of the slice
+		if(view == null || ((offset | length) & 7) != 0)
+			return null;
+		view.limit((int) ((offset >>> 3) + rawLength())).position((int) (offset >>> 3));
+		return readOnly ? view.slice().asReadOnlyBuffer() : view.slice();
+	}
+
+	@Override
+	protected long rawLength() {
+		return (length + 7) >>> 3;
+	}
+}
@@ -0,0 +1,57 @@
+package net.magik6k.bitbuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Per-thread scratch space of string coding, so that strings which can't be coded
+ * in place don't allocate chunks on every call. Coding may call back into user code,
+ * such as {@link CharSequence#charAt(int)} or custom coders, so scratch space is taken
+ * from the thread while in use and nested calls get their own.
+ */
+final class StringCoding {
+	static final int CHUNK = 256;
+
+	private static final ThreadLocal<StringCoding> LOCAL = new ThreadLocal<StringCoding>();
+
+	final ByteBuffer bytes = ByteBuffer.allocate(CHUNK);
+	final CharBuffer chars = CharBuffer.allocate(CHUNK);
+	private CharsetEncoder encoder;
+
+	private StringCoding() {
+	}
+
+	/**
+	 * @return Scratch space of this thread, or new one if it's in use, must be {@link #release() released} after use
+	 */
+	static StringCoding acquire(){
+		StringCoding scratch = LOCAL.get();
+		if(scratch == null)
+			return new StringCoding();
+		LOCAL.set(null);
+		return scratch;
+	}
+
+	/**
+	 * Returns this scratch space to current thread
+	 */
+	void release(){
+		LOCAL.set(this);
+	}
+
+	/**
+	 * @param charset Charset to encode to
+	 * @return Cached encoder replacing malformed and unmappable input, as {@link String#getBytes(Charset)} does
+	 */
+	CharsetEncoder encoder(Charset charset){
+		if(encoder == null || !encoder.charset().equals(charset)){
+			encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+		return encoder;
+	}
+}
@@ -0,0 +1,324 @@
+package net.magik6k.bitbuffer;
+
+import java.nio.BufferUnderflowException;
+
+/**
+ * Variable length code of integer values. Unless stated otherwise values are
+ * treated as unsigned 64 bit integers.
+ * Decoders of prefix codes count leading zeros of 64 bit window instead of
+ * reading bit by bit, longer codes fall back to reading in chunks.
+ * Codes are written in stream order of the buffer's {@link BitOrder}, bit by bit
+ * codes keep their first bit first and {@link #VARINT} keeps its bytes intact.
+ * @see BitBuffer#put(long, VarCode)
+ * @see BitBuffer#getLong(VarCode)
+ */
+public abstract class VarCode {
+	/**
+	 * LEB128 code, 7 bits per byte, least significant group first.
+	 * Most significant bit of every byte but the last one is set.
+	 */
+	public static final VarCode VARINT = new VarCode() {
+		@Override
+		public void encode(BitBuffer buffer, long value) {
+			long acc = 0;
+			int bytes = 0;
+			while((value & ~0x7FL) != 0 && bytes < 7){
+				acc = (acc << 8) | (value & 0x7F) | 0x80;
+				value >>>= 7;
+				++bytes;
+			}
+			if((value & ~0x7FL) == 0){
+				buffer.putStreamBits(buffer.bitOrder().bytesToStream((acc << 8) | value), (bytes + 1) * 8);
+				return;
+			}
+			buffer.putStreamBits(buffer.bitOrder().bytesToStream(acc), bytes * 8);
+			while((value & ~0x7FL) != 0){
+				buffer.putByte((byte) (value | 0x80));
+				value >>>= 7;
+			}
+			buffer.putByte((byte) value);
+		}
+
+		@Override
+		public long decode(BitBuffer buffer) {
+			long window = buffer.bitOrder().bytesToStream(buffer.peekWindow());
+			long stop = ~window & 0x8080808080808080L;
+			if(stop != 0){
+				int bytes = (Long.numberOfLeadingZeros(stop) >>> 3) + 1;
+				//Window is padded with 0 bits past the limit, which look like the last byte
+				require(buffer, bytes * 8);
+				long value = 0;
+				for(int i = 0; i < bytes; ++i){
+					value |= ((window >>> (56 - 8 * i)) & 0x7F) << (7 * i);
+				}
+				buffer.setPosition(buffer.position() + bytes * 8);
+				return value;
+			}
+			long value = 0;
+			for(int shift = 0; shift < 64; shift += 7){
+				require(buffer, 8);
+				byte b = buffer.getByte();
+				//Only the lowest bit of the 10th byte fits in 64 bits
+				if(shift == 63 && (b & 0xFF) > 1)
+					throw new IllegalStateException("Malformed varint");
+				value |= (b & 0x7FL) << shift;
+				if(b >= 0)
+					return value;
+			}
+			throw new IllegalStateException("Malformed varint");
+		}
+	};
+
+	/**
+	 * Signed {@link #VARINT}, values are zigzag encoded first, so that small negative values have short codes
+	 * @see #zigZag(long)
+	 */
+	public static final VarCode ZIGZAG_VARINT = new VarCode() {
+		@Override
+		public void encode(BitBuffer buffer, long value) {
+			VARINT.encode(buffer, zigZag(value));
+		}
+
+		@Override
+		public long decode(BitBuffer buffer) {
+			return unZigZag(VARINT.decode(buffer));
+		}
+	};
+
+	/**
+	 * Exp-Golomb code of order 0, 0 is encoded as single '1' bit
+	 */
+	public static final VarCode EXP_GOLOMB = expGolomb(0);
+
+	/**
+	 * Signed Exp-Golomb code of order 0. Positive values v are mapped to 2v-1, others to -2v.
+	 * Long.MIN_VALUE can't be encoded
+	 */
+	public static final VarCode SIGNED_EXP_GOLOMB = signedExpGolomb(0);
+
+	/**
+	 * Elias gamma code, n zero bits followed by n+1 bit value. Encodes values greater than 0
+	 */
+	public static final VarCode ELIAS_GAMMA = new VarCode() {
+		@Override
+		public void encode(BitBuffer buffer, long value) {
+			if(value == 0)
+				throw new IllegalArgumentException("Elias gamma can't encode 0");
+			EXP_GOLOMB.encode(buffer, value - 1);
+		}
+
+		@Override
+		public long decode(BitBuffer buffer) {
+			return EXP_GOLOMB.decode(buffer) + 1;
+		}
+	};
+
+	/**
+	 * Elias delta code, bit length of value in Elias gamma code followed by the value without its leading 1 bit.
+	 * Encodes values greater than 0
+	 */
+	public static final VarCode ELIAS_DELTA = new VarCode() {
+		@Override
+		public void encode(BitBuffer buffer, long value) {
+			if(value == 0)
+				throw new IllegalArgumentException("Elias delta can't encode 0");
+			int length = 64 - Long.numberOfLeadingZeros(value);
+			ELIAS_GAMMA.encode(buffer, length);
+			if(length > 1)
+				buffer.putStreamBits(value, length - 1);
+		}
+
+		@Override
+		public long decode(BitBuffer buffer) {
+			long length = ELIAS_GAMMA.decode(buffer);
+			if(length > 64)
+				throw new IllegalStateException("Malformed Elias delta code");
+			require(buffer, length - 1);
+			return (1L << (length - 1)) | buffer.getStreamBits((int) length - 1);
+		}
+	};
+
+	/**
+	 * Creates Exp-Golomb code of given order. Value v is encoded as v + 2^k in Elias gamma code
+	 * @param k Order of the code, 0-63
+	 * @return Code instance
+	 */
+	public static VarCode expGolomb(final int k){
+		if(k < 0 || k > 63)
+			throw new IllegalArgumentException("Invalid Exp-Golomb order: " + k);
+		return new VarCode() {
+			@Override
+			public void encode(BitBuffer buffer, long value) {
+				long word = value + (1L << k);
+				if((word ^ Long.MIN_VALUE) < (value ^ Long.MIN_VALUE))
+					throw new IllegalArgumentException("Value too large for Exp-Golomb order " + k);
+				int width = 64 - Long.numberOfLeadingZeros(word);
+				int zeros = width - 1 - k;
+				if(zeros + width <= 64){
+					buffer.putStreamBits(word, zeros + width);
+				}else{
+					buffer.putLong(0, zeros);
+					buffer.putStreamBits(word, width);
+				}
+			}
+
+			@Override
+			public long decode(BitBuffer buffer) {
+				long window = buffer.peekWindow();
+				int zeros = Long.numberOfLeadingZeros(window);
+				long word;
+				if(zeros < 64 && 2 * zeros + k + 1 <= 64){
+					int length = 2 * zeros + k + 1;
+					//Window is padded with 0 bits past the limit, which may look like the value bits
+					require(buffer, length);
+					word = window >>> (64 - length);
+					buffer.setPosition(buffer.position() + length);
+				}else{
+					long width = buffer.getZeroRun() + k;
+					if(width > 63)
+						throw new IllegalStateException("Malformed Exp-Golomb code");
+					require(buffer, width);
+					word = (1L << width) | buffer.getStreamBits((int) width);
+				}
+				return word - (1L << k);
+			}
+		};
+	}
+
+	/**
+	 * Creates signed Exp-Golomb code of given order. Positive values v are mapped to 2v-1, others to -2v,
+	 * mapped value is encoded in {@link #expGolomb(int)} code. Long.MIN_VALUE can't be encoded
+	 * @param k Order of the code, 0-63
+	 * @return Code instance
+	 */
+	public static VarCode signedExpGolomb(int k){
+		final VarCode code = expGolomb(k);
+		return new VarCode() {
+			@Override
+			public void encode(BitBuffer buffer, long value) {
+				if(value == Long.MIN_VALUE)
+					throw new IllegalArgumentException("Long.MIN_VALUE can't be encoded");
+				code.encode(buffer, value > 0 ? (value << 1) - 1 : -value << 1);
+			}
+
+			@Override
+			public long decode(BitBuffer buffer) {
+				long value = code.decode(buffer);
+				return (value & 1) != 0 ? (value >>> 1) + 1 : -(value >>> 1);
+			}
+		};
+	}
+
+	/**
+	 * Creates Golomb-Rice code with parameter 2^k. Value v is encoded as v >>> k zero bits,
+	 * a '1' bit and k least significant bits of v
+	 * @param k Parameter of the code, 0-63
+	 * @return Code instance
+	 */
+	public static VarCode rice(final int k){
+		if(k < 0 || k > 63)
+			throw new IllegalArgumentException("Invalid Rice parameter: " + k);
+		final long mask = (1L << k) - 1;
+		return new VarCode() {
+			@Override
+			public void encode(BitBuffer buffer, long value) {
+				long quotient = value >>> k;
+				if(quotient < 64 - k){
+					buffer.putStreamBits((1L << k) | (value & mask), (int) quotient + 1 + k);
+					return;
+				}
+				for(; quotient >= 64; quotient -= 64){
+					buffer.putLong(0);
+				}
+				buffer.putStreamBits(1, (int) quotient + 1);
+				buffer.putStreamBits(value, k);
+			}
+
+			@Override
+			public long decode(BitBuffer buffer) {
+				long window = buffer.peekWindow();
+				int zeros = Long.numberOfLeadingZeros(window);
+				if(zeros < 64 && zeros + 1 + k <= 64){
+					int length = zeros + 1 + k;
+					require(buffer, length);
+					buffer.setPosition(buffer.position() + length);
+					return ((long) zeros << k) | ((window >>> (64 - length)) & mask);
+				}
+				long quotient = buffer.getZeroRun();
+				require(buffer, k);
+				return (quotient << k) | buffer.getStreamBits(k);
+			}
+		};
+	}
+
+	/**
+	 * Checks that code of given length doesn't extend past the limit of given buffer.
+	 * Bulk reads check only size of the buffer and windows are padded with 0 bits past the limit
+	 * @param buffer Buffer being decoded
+	 * @param bits Amount of bits remaining in the code
+	 * @throws BufferUnderflowException if fewer bits remain before the limit
+	 */
+	static void require(BitBuffer buffer, long bits){
+		if(bits > buffer.limit() - buffer.position())
+			throw new BufferUnderflowException();
+	}
+
+	/**
+	 * Maps signed value to unsigned one, so that values of small magnitude have few significant bits.
+	 * 0, -1, 1, -2, 2... are mapped to 0, 1, 2, 3, 4...
+	 * @param value Signed value
+	 * @return Zigzag encoded value
+	 */
+	public static long zigZag(long value){
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Inverse of {@link #zigZag(long)}
+	 * @param value Zigzag encoded value
+	 * @return Signed value
+	 */
+	public static long unZigZag(long value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Writes value at the position of given buffer
+	 * @param buffer Buffer to write to
+	 * @param value Value to encode
+	 */
+	public abstract void encode(BitBuffer buffer, long value);
+
+	/**
+	 * Reads value at the position of given buffer
+	 * @param buffer Buffer to read from
+	 * @return Decoded value
+	 */
+	public abstract long decode(BitBuffer buffer);
+
+	/**
+	 * Writes values from array at the position of given buffer
+	 * @param buffer Buffer to write to
+	 * @param values Values to encode
+	 * @param offset First index in array
+	 * @param limit Last index in array, exclusive
+	 */
+	public void encode(BitBuffer buffer, long[] values, int offset, int limit){
+		for(; offset < limit; ++offset) {
+			encode(buffer, values[offset]);
+		}
+	}
+
+	/**
+	 * Reads values at the position of given buffer into array
+	 * @param buffer Buffer to read from
+	 * @param dst Array to write values to
+	 * @param offset First index in array
+	 * @param limit Last index in array, exclusive
+	 */
+	public void decode(BitBuffer buffer, long[] dst, int offset, int limit){
+		for(; offset < limit; ++offset) {
+			dst[offset] = decode(buffer);
+		}
+	}
+}
@@ -2,7 +2,28 @@ package net.magik6k.bitbuffer;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
 import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
 
 import net.magik6k.bitbuffer.BitBuffer;
 
@@ -30,6 +51,49 @@ public class BitBufferTest {
 		assertEquals("HELLO", buffer.getString(5, 7));
 	}
 	
+	@Test
+	public void dynamicGrowthTest(){
+		BitBuffer buffer = BitBuffer.allocateDynamic(8, GrowthPolicy.chunk(24));
+		for(int i = 0; i < 1000; ++i){
+			buffer.putInt(i, 13);
+		}
+		buffer.trimToSize();
+		assertEquals((1000 * 13 + 7) / 8, buffer.asByteArray().length);
+		
+		buffer.ensureCapacity(20000);
+		assertEquals(2500, buffer.asByteArray().length);
+		
+		buffer.flip();
+		
+		for(int i = 0; i < 1000; ++i){
+			assertHex(i, buffer.getIntUnsigned(13));
+		}
+	}
+	
+	@Test
+	public void segmentedDynamicTest(){
+		BitBuffer buffer = new AutomaticBitBuffer(0, GrowthPolicy.ONE_AND_HALF, 4);
+		Random random = new Random(7);
+		long[] values = new long[100];
+		for(int i = 0; i < values.length; ++i){
+			values[i] = random.nextLong();
+			buffer.putBoolean(i % 3 == 0);
+			buffer.putLong(values[i]);
+		}
+		
+		buffer.flip();
+		
+		for(int i = 0; i < values.length; ++i){
+			assertEquals(i % 3 == 0, buffer.getBoolean());
+			assertHex(values[i], buffer.getLong());
+		}
+	}
+	
+	@Test(expected=BufferOverflowException.class)
+	public void capacityOverflowTest(){
+		BitBuffer.allocate(64).ensureCapacity(65);
+	}
+	
 	@Test(expected=BufferOverflowException.class)
 	public void directOverflowTest(){
 		BitBuffer buffer = BitBuffer.allocateDirect(48);
@@ -150,6 +214,123 @@ public class BitBufferTest {
 		assertEquals("baz", buffer.getString(3));
 	}
 	
+	@Test
+	public void stringCodingTest() throws CharacterCodingException{
+		String mixed = "abc\u00e9\u20ac\ud83d\ude00xyz";
+		int mixedBytes = mixed.getBytes(StandardCharsets.UTF_8).length;
+		StringBuilder longText = new StringBuilder();
+		for(int i = 0; i < 100; ++i){
+			longText.append(mixed).append(i);
+		}
+		String text = longText.toString();
+		int textBytes = text.getBytes(StandardCharsets.UTF_8).length;
+		
+		for(BitBuffer buffer : new BitBuffer[]{BitBuffer.allocate(80000), BitBuffer.allocateLongArray(80000), BitBuffer.allocateDynamic(8)}){
+			CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+			CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+			for(int shift = 0; shift < 2; ++shift){
+				buffer.clear();
+				buffer.putInt(1, shift);
+				buffer.putString(mixed);
+				buffer.putString("plain", StandardCharsets.US_ASCII);
+				buffer.putString(text, encoder);
+				buffer.putPrefixedString(mixed);
+				buffer.putPrefixedString("plain", StandardCharsets.ISO_8859_1, VarCode.EXP_GOLOMB);
+				buffer.putString(mixed, encoder);
+				buffer.putString(text);
+				buffer.putPrefixedString("a\ud800b\ud83d\ude00");
+				buffer.putString(new StringBuilder(text), encoder);
+				buffer.flip();
+				
+				buffer.skipBits(shift);
+				assertEquals(mixed, buffer.getString(mixedBytes));
+				assertEquals("plain", buffer.getString(5, StandardCharsets.US_ASCII));
+				assertEquals(text, buffer.getString(textBytes, decoder, new StringBuilder()).toString());
+				assertEquals(mixed, buffer.getPrefixedString());
+				assertEquals("plain", buffer.getPrefixedString(StandardCharsets.ISO_8859_1, VarCode.EXP_GOLOMB));
+				
+				CharBuffer small = CharBuffer.allocate(4);
+				long position = buffer.position();
+				try{
+					buffer.getString(mixedBytes, decoder, small);
+					fail();
+				}catch(BufferOverflowException e){
+				}
+				assertEquals(position, buffer.position());
+				assertEquals(0, small.position());
+				
+				CharBuffer chars = CharBuffer.allocate(32);
+				chars.put('>');
+				buffer.getString(mixedBytes, decoder, chars);
+				chars.flip();
+				assertEquals(">" + mixed, chars.toString());
+				assertEquals(text, buffer.getString(textBytes));
+				assertEquals("a?b\ud83d\ude00", buffer.getPrefixedString());
+				assertEquals(text, buffer.getString(textBytes, decoder, new StringBuilder()).toString());
+				assertEquals(buffer.limit(), buffer.position());
+			}
+		}
+		
+		BitBuffer full = BitBuffer.allocate(64);
+		try{
+			full.putString("0123456789", StandardCharsets.UTF_8.newEncoder());
+			fail();
+		}catch(BufferOverflowException e){
+		}
+		assertEquals(64L, full.position());
+		
+		BitBuffer invalid = BitBuffer.wrap(new byte[]{'a', (byte) 0xFF});
+		StringBuilder partial = new StringBuilder(">");
+		try{
+			invalid.getString(2, StandardCharsets.UTF_8.newDecoder(), partial);
+			fail();
+		}catch(CharacterCodingException e){
+		}
+		assertEquals(0L, invalid.position());
+		assertEquals(">", partial.toString());
+		CharBuffer invalidChars = CharBuffer.allocate(4);
+		try{
+			invalid.getString(2, StandardCharsets.UTF_8.newDecoder(), invalidChars);
+			fail();
+		}catch(CharacterCodingException e){
+		}
+		assertEquals(0L, invalid.position());
+		assertEquals(0, invalidChars.position());
+		
+		try{
+			BitBuffer.allocate(64).asReadOnlyBuffer().putString("ab");
+			fail();
+		}catch(ReadOnlyBufferException e){
+		}
+		
+		//Characters are produced by user code, which codes strings too
+		final BitBuffer nested = BitBuffer.allocate(1 << 20);
+		nested.putBoolean(true);
+		CharSequence reentrant = new CharSequence(){
+			@Override
+			public int length() {
+				return text.length();
+			}
+			
+			@Override
+			public char charAt(int index) {
+				nested.putString(mixed);
+				return text.charAt(index);
+			}
+			
+			@Override
+			public CharSequence subSequence(int start, int end) {
+				return text.subSequence(start, end);
+			}
+		};
+		BitBuffer outer = BitBuffer.allocate(80000).putString(reentrant, StandardCharsets.UTF_8.newEncoder()).flip();
+		assertEquals(text, outer.getString(textBytes));
+		nested.flip().skipBits(1);
+		for(int i = 0; i < text.length(); ++i){
+			assertEquals(mixed, nested.getString(mixedBytes));
+		}
+	}
+	
 	@Test
 	public void partialIntegerTest(){
 		BitBuffer buffer = BitBuffer.allocate(128);
@@ -430,6 +611,1136 @@ public class BitBufferTest {
         assertEquals(2, buffer.asByteArray().length);
     }
 
+	@Test
+	public void unalignedFieldTest(){
+		BitBuffer[] buffers = {BitBuffer.allocate(4096), BitBuffer.allocateDirect(4096), BitBuffer.allocateDynamic(),
+				BitBuffer.allocateLongArray(4096)};
+		for(BitBuffer buffer : buffers){
+			Random random = new Random(42);
+			int[] widths = new int[64];
+			long[] values = new long[64];
+			for(int i = 0; i < widths.length; ++i){
+				widths[i] = 1 + random.nextInt(64);
+				values[i] = random.nextLong() >> (64 - widths[i]);
+				buffer.putLong(values[i], widths[i]);
+			}
+			
+			buffer.flip();
+			
+			for(int i = 0; i < widths.length; ++i){
+				assertHex(values[i], buffer.getLong(widths[i]));
+			}
+		}
+	}
+	
+	@Test
+	public void bufferTailTest(){
+		BitBuffer buffer = BitBuffer.allocate(72);
+		buffer.putBoolean(true);
+		buffer.putLong(0x5A5A5A5A5A5A5A5AL, 64);
+		buffer.putInt(0x5F, 7);
+		
+		buffer.flip();
+		
+		assertTrue(buffer.getBoolean());
+		assertHex(0x5A5A5A5A5A5A5A5AL, buffer.getLong());
+		assertHex(0x5F, buffer.getIntUnsigned(7));
+	}
+
+	@Test
+	public void longArrayTest(){
+		long[] words = new long[2];
+		BitBuffer buffer = BitBuffer.wrap(words);
+		buffer.putByte((byte) 0xA5, 4);
+		buffer.putLong(0x123456789ABCDEF0L);
+		buffer.putByte((byte) 0x3C);
+		buffer.putBoolean(true);
+		
+		assertHex(0x5123456789ABCDEFL, words[0]);
+		assertHex(0x03C8000000000000L, words[1]);
+		assertBits((byte) 0x51, buffer.asByteArray()[0]);
+		
+		BitSet set = buffer.asBitSet();
+		assertTrue(set.get(1));
+		assertFalse(set.get(0));
+		assertEquals(77, set.length());
+		
+		buffer.flip();
+		
+		assertHex(0x5, buffer.getIntUnsigned(4));
+		assertHex(0x123456789ABCDEF0L, buffer.getLong());
+		assertBits((byte) 0x3C, buffer.getByte());
+		assertTrue(buffer.getBoolean());
+	}
+
+	@Test
+	public void bufferCopyTest(){
+		Random random = new Random(3);
+		byte[] data = new byte[64];
+		random.nextBytes(data);
+		BitBuffer reference = BitBuffer.wrap(data);
+		
+		int[][] ranges = {{0, 512, 0}, {8, 400, 16}, {3, 500, 0}, {16, 333, 5}, {7, 1, 9}, {13, 190, 13}};
+		for(int[] range : ranges){
+			for(BitBuffer src : new BitBuffer[]{BitBuffer.allocate(512), BitBuffer.allocateDirect(512),
+					BitBuffer.allocateDynamic(), BitBuffer.allocateLongArray(512)}){
+				src.put(reference, 0, 512);
+				for(BitBuffer dst : new BitBuffer[]{BitBuffer.allocate(1024), BitBuffer.allocateDirect(1024),
+						BitBuffer.allocateDynamic(8), BitBuffer.allocateLongArray(1024)}){
+					dst.putInt(-1, range[2]);
+					dst.put(src, range[0], range[1]);
+					dst.putBoolean(true);
+					assertEquals((long) range[1] + range[2] + 1, dst.position());
+					
+					dst.flip();
+					
+					assertHex(range[2] == 0 ? 0 : -1, dst.getInt(range[2]));
+					reference.setPosition(range[0]);
+					for(int i = 0; i < range[1]; ++i){
+						assertEquals(reference.getBoolean(), dst.getBoolean());
+					}
+					assertTrue(dst.getBoolean());
+				}
+			}
+		}
+		
+		BitBuffer src = BitBuffer.allocate(512);
+		src.put(reference, 0, 512);
+		src.flip();
+		src.setPosition(100);
+		BitBuffer dst = BitBuffer.allocateDynamic();
+		dst.put(src);
+		assertEquals(512L, src.position());
+		assertEquals(412L, dst.position());
+	}
+	
+	@Test
+	public void overlappingCopyTest(){
+		BitBuffer buffer = BitBuffer.allocate(256);
+		for(int i = 0; i < 16; ++i){
+			buffer.putInt(i, 13);
+		}
+		buffer.setPosition(13 * 3 + 5);
+		buffer.put(buffer, 13 * 3, 13 * 8);
+		buffer.flip();
+		
+		buffer.setPosition(13 * 3 + 5);
+		for(int i = 3; i < 11; ++i){
+			assertHex(i, buffer.getIntUnsigned(13));
+		}
+	}
+	
+	@Test
+	public void overlappingViewCopyTest(){
+		assertViewCopy(BitOrder.MSB_FIRST, BitOrder.MSB_FIRST, 10, 3, 150, true);
+		assertViewCopy(BitOrder.MSB_FIRST, BitOrder.MSB_FIRST, 5, 0, 200, false);
+		assertViewCopy(BitOrder.LSB_FIRST, BitOrder.LSB_FIRST, 10, 3, 150, true);
+		assertViewCopy(BitOrder.MSB_FIRST, BitOrder.LSB_FIRST, 10, 3, 150, true);
+		assertViewCopy(BitOrder.LSB_FIRST, BitOrder.MSB_FIRST, 3, 10, 150, true);
+	}
+	
+	private static void assertViewCopy(BitOrder order, BitOrder viewOrder, long position, long offset, long length, boolean slice){
+		BitBuffer buffer = BitBuffer.allocate(256).bitOrder(order);
+		for(int i = 0; i < 8; ++i){
+			buffer.putInt(0x9E3779B9 * (i + 1));
+		}
+		BitBuffer src = slice ? buffer.slice(offset, 256 - offset) : buffer.duplicate();
+		src.bitOrder(viewOrder);
+		BitBuffer expected = BitBuffer.allocate(length).bitOrder(order);
+		expected.put(src, slice ? 0 : offset, length);
+		
+		buffer.setPosition(position);
+		buffer.put(src, slice ? 0 : offset, length);
+		for(long i = 0; i < length; ++i){
+			assertEquals("bit " + (position + i), expected.getBoolean(i), buffer.getBoolean(position + i));
+		}
+	}
+
+	@Test
+	public void byteViewTest(){
+		byte[] array = new byte[4];
+		BitBuffer buffer = BitBuffer.wrap(array);
+		ByteBuffer view = buffer.asByteBuffer();
+		buffer.putInt(0xCAFEBABE);
+		assertHex(0xCAFEBABE, view.getInt(0));
+		view.put(0, (byte) 0x12);
+		assertBits((byte) 0x12, array[0]);
+		
+		BitBuffer direct = BitBuffer.allocateDirect(32);
+		direct.putInt(0xDEADBEEF);
+		ByteBuffer copy = ByteBuffer.allocateDirect(4);
+		direct.putToByteBuffer(copy);
+		assertHex(0xDEADBEEF, copy.getInt(0));
+		ByteBuffer directView = direct.asByteBuffer();
+		assertHex(0xDEADBEEF, directView.getInt(0));
+		directView.put(0, (byte) 0);
+		assertHex(0xDEADBEEF, direct.getInt(0L, 32));
+		
+		//Views end at the limit, copies clear bits past the data
+		BitBuffer stale = BitBuffer.wrap(new byte[]{1, 2, 3, 4});
+		stale.putInt(0xABC, 12).flip();
+		ByteBuffer bounded = stale.asByteBuffer();
+		assertEquals(2, bounded.remaining());
+		assertEquals(2, bounded.capacity());
+		ByteBuffer target = ByteBuffer.allocate(4);
+		stale.putToByteBuffer(target);
+		assertEquals(2, target.position());
+		
+		BitBuffer words = BitBuffer.allocateLongArray(64);
+		words.putLong(-1L).clear();
+		words.putInt(0xABC, 12).flip();
+		ByteBuffer copied = ByteBuffer.allocate(8);
+		words.putToByteBuffer(copied);
+		assertEquals(8, copied.position());
+		assertTrue(Arrays.equals(words.asByteArray(), copied.array()));
+		assertBits((byte) 0xC0, copied.get(1));
+		assertBits((byte) 0, copied.get(2));
+	}
+	
+	@Test
+	public void channelTest() throws IOException{
+		for(BitBuffer buffer : new BitBuffer[]{BitBuffer.allocate(64), BitBuffer.allocateDirect(64),
+				BitBuffer.allocateLongArray(64)}){
+			buffer.putInt(0x1234567, 28);
+			buffer.putByte((byte) 0x5, 3);
+			buffer.flip();
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertEquals(4, buffer.writeTo(Channels.newChannel(out)));
+			assertEquals(31L, buffer.position());
+			assertHex(0x1234567A, ByteBuffer.wrap(out.toByteArray()).getInt());
+			
+			buffer.flip();
+			buffer.setPosition(16);
+			assertEquals(3, buffer.readFrom(Channels.newChannel(new ByteArrayInputStream(new byte[]{(byte) 0xAB, (byte) 0xCD, 1}))));
+			assertEquals(-1, buffer.readFrom(Channels.newChannel(new ByteArrayInputStream(new byte[0]))));
+			assertEquals(40L, buffer.position());
+			buffer.flip();
+			assertHex(0x1234ABCD, buffer.getInt());
+		}
+	}
+
+	@Test
+	public void mappedFileTest() throws IOException{
+		File file = File.createTempFile("bitbuffer", ".bin");
+		file.deleteOnExit();
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			BitBuffer buffer = BitBuffer.map(channel, FileChannel.MapMode.READ_WRITE, 0, 8 * 64);
+			for(int i = 0; i < 16; ++i){
+				buffer.putInt(i * 0x01010101);
+			}
+			assertEquals(64L, channel.size());
+			
+			BitBuffer unaligned = BitBuffer.map(channel, FileChannel.MapMode.READ_WRITE, 36, 100);
+			assertHex(0x10101010, unaligned.getInt());
+			unaligned.putLong(-1L, 64);
+			
+			BitBuffer segmented = ByteBufferBitBuffer.mapFile(channel, FileChannel.MapMode.READ_ONLY, 0, 8 * 64, 4);
+			assertHex(0x0000000001010101L, segmented.getLong());
+			assertHex(0, segmented.getIntUnsigned(4));
+			assertHex(-1L, segmented.getLong());
+			assertHex(0x4040404, segmented.getInt(28));
+			assertHex(0x05050505, segmented.getInt());
+		}
+	}
+
+	@Test
+	public void asyncFileTest() throws Exception{
+		File file = File.createTempFile("bitbuffer", ".bin");
+		file.deleteOnExit();
+		try(AsynchronousFileChannel channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			byte[] bytes = new byte[20000];
+			new Random(7).nextBytes(bytes);
+			BitBuffer source = BitBuffer.wrap(bytes);
+			assertEquals(Integer.valueOf(19990), source.writeTo(channel, 100, 80, 19990 * 8).get());
+			assertEquals(20090L, channel.size());
+			assertEquals(0L, source.position());
+			
+			BitBuffer chunked = BitBuffer.allocateLongArray(20000 * 8);
+			assertEquals(Integer.valueOf(19990), chunked.readFrom(channel, 100, 16, 19990 * 8 - 3).get());
+			assertEquals(0L, chunked.position());
+			chunked.setPosition(16);
+			for(int i = 0; i < 19990; ++i){
+				assertBits(bytes[i + 10], chunked.getByte());
+			}
+			
+			BitBuffer slice = BitBuffer.allocate(256).slice(64, 128);
+			assertEquals(Integer.valueOf(10), slice.readFrom(channel, 20080, 0, 128).get());
+			assertBits(bytes[19999], (byte) slice.getLongUnsigned(72, 8));
+			assertEquals(Integer.valueOf(-1), slice.readFrom(channel, 20090, 0, 8).get());
+			
+			try{
+				chunked.writeTo(channel, 0, 3, 8);
+				fail();
+			}catch(IllegalArgumentException e){
+			}
+		}
+	}
+
+	@Test
+	public void byteBufferWrapTest(){
+		for(ByteBuffer bytes : new ByteBuffer[]{ByteBuffer.allocate(24), ByteBuffer.allocateDirect(24)}){
+			bytes.order(java.nio.ByteOrder.LITTLE_ENDIAN);
+			bytes.position(4).limit(20);
+			BitBuffer buffer = BitBuffer.wrap(bytes);
+			assertEquals(128L, buffer.size());
+			buffer.putBoolean(true);
+			buffer.putLong(0x0123456789ABCDEFL);
+			buffer.putInt(0x7F, 7);
+			assertEquals(4, bytes.position());
+			
+			ByteBuffer check = bytes.duplicate().order(java.nio.ByteOrder.BIG_ENDIAN);
+			assertHex(0x8091A2B3C4D5E6F7L, check.getLong(4));
+			assertBits((byte) 0xFF, check.get(12));
+			
+			BitBuffer copy = BitBuffer.allocate(200);
+			copy.putByte((byte) 1, 3);
+			copy.put(bytes);
+			assertEquals(20, bytes.position());
+			assertEquals(3L + 128, copy.position());
+			copy.flip();
+			assertHex(1, copy.getIntUnsigned(3));
+			assertTrue(copy.getBoolean());
+			assertHex(0x0123456789ABCDEFL, copy.getLong());
+		}
+	}
+
+	@Test
+	public void directCloseTest(){
+		NativeArena arena = new NativeArena(1 << 20);
+		BitBuffer buffer = new DirectBitBuffer(8000, arena);
+		buffer.putLong(-1L);
+		buffer.close();
+		buffer.close();
+		assertEquals(1024L, arena.retained());
+		try{
+			buffer.getLong();
+			fail();
+		}catch(BufferOverflowException e){
+			//expected
+		}
+		
+		try(BitBuffer reused = new DirectBitBuffer(7200, arena)){
+			assertEquals(0L, arena.retained());
+			assertHex(0, reused.getLong());
+		}
+		assertEquals(1024L, arena.retained());
+		arena.trim();
+		assertEquals(0L, arena.retained());
+	}
+
+	@Test
+	public void poolTest() throws InterruptedException{
+		for(boolean direct : new boolean[]{false, true}){
+			BitBufferPool pool = new BitBufferPool(direct, 1 << 16, 2, 1);
+			BitBuffer buffer = pool.acquire(1000);
+			assertEquals(1024L, buffer.size());
+			buffer.putInt(42);
+			buffer.flip();
+			pool.release(buffer);
+			
+			BitBuffer reused = pool.acquire(600);
+			assertSame(buffer, reused);
+			assertTrue(reused.canWrite());
+			assertEquals(0L, reused.position());
+			reused.bitOrder(BitOrder.LSB_FIRST).order(ByteOrder.BIG_ENDIAN);
+			pool.release(reused);
+			reused = pool.acquire(600);
+			assertSame(buffer, reused);
+			assertEquals(BitOrder.MSB_FIRST, reused.bitOrder());
+			assertEquals(ByteOrder.BIG_ENDIAN, reused.order());
+			pool.release(reused);
+			try{
+				pool.release(reused);
+				fail();
+			}catch(IllegalArgumentException e){
+				//expected
+			}
+			
+			BitBuffer large = pool.acquire(1 << 20);
+			pool.release(large);
+			
+			for(int i = 0; i < 10; ++i){
+				pool.release(pool.acquire(64));
+			}
+			
+			//Leaked buffer is unreachable, leases are enqueued once it's collected
+			pool.acquire(64);
+			for(int i = 0; i < 100 && pool.leakCount() == 0; ++i){
+				System.gc();
+				Thread.sleep(10);
+			}
+			assertEquals(1L, pool.leakCount());
+			pool.trim();
+		}
+	}
+
+	@Test
+	public void packedArrayTest(){
+		Random random = new Random(11);
+		int[] ints = new int[150];
+		long[] longs = new long[150];
+		for(int i = 0; i < ints.length; ++i){
+			ints[i] = random.nextInt();
+			longs[i] = random.nextLong();
+		}
+		for(int bits : new int[]{1, 3, 7, 13, 32, 33, 63, 64}){
+			for(int skip : new int[]{0, 5}){
+				BitBuffer buffer = BitBuffer.allocate(skip + 2L * 150 * bits + 64);
+				buffer.putInt(0, skip);
+				if(bits <= 32)
+					buffer.put(ints, 0, ints.length, bits);
+				buffer.put(longs, 0, longs.length, bits);
+				buffer.flip();
+				buffer.getInt(skip);
+				
+				if(bits <= 32){
+					int[] intResult = buffer.get(new int[ints.length], 0, ints.length, bits);
+					for(int i = 0; i < ints.length; ++i)
+						assertHex((ints[i] << (32 - bits)) >> (32 - bits), intResult[i]);
+				}
+				long[] longResult = buffer.get(new long[longs.length], 0, longs.length, bits);
+				for(int i = 0; i < longs.length; ++i)
+					assertHex((longs[i] << (64 - bits)) >> (64 - bits), longResult[i]);
+			}
+		}
+		
+		byte[] bytes = new byte[21];
+		random.nextBytes(bytes);
+		BitBuffer buffer = BitBuffer.allocate(2 * 8 * 21 + 3);
+		buffer.put(bytes).putInt(5, 3).put(bytes).flip();
+		assertTrue(java.util.Arrays.equals(bytes, buffer.get(new byte[21])));
+		assertEquals(5, buffer.getIntUnsigned(3));
+		assertTrue(java.util.Arrays.equals(bytes, buffer.get(new byte[21])));
+		
+		//Every width has its own kernel, compare them with single value writes
+		for(BitOrder order : new BitOrder[]{BitOrder.MSB_FIRST, BitOrder.LSB_FIRST}){
+			for(int bits = 1; bits <= 64; ++bits){
+				BitBuffer bulk = BitBuffer.allocate(128L * bits).bitOrder(order);
+				BitBuffer single = BitBuffer.allocate(128L * bits).bitOrder(order);
+				bulk.put(longs, 0, 128, bits);
+				for(int i = 0; i < 128; ++i)
+					single.putLong(longs[i], bits);
+				assertTrue(Arrays.equals(single.asByteArray(), bulk.asByteArray()));
+				bulk.flip();
+				long[] longResult = bulk.get(new long[128], bits);
+				for(int i = 0; i < 128; ++i)
+					assertHex((longs[i] << (64 - bits)) >> (64 - bits), longResult[i]);
+				if(bits <= 32){
+					bulk.flip().put(ints, 0, 128, bits).flip();
+					int[] intResult = bulk.get(new int[128], bits);
+					for(int i = 0; i < 128; ++i)
+						assertHex((ints[i] << (32 - bits)) >> (32 - bits), intResult[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void packedRandomAccessTest(){
+		Random random = new Random(12);
+		PackedIntArray ids = new PackedIntArray(1000, 17);
+		int[] expected = new int[1000];
+		for(int i = 0; i < 3000; ++i){
+			int index = random.nextInt(expected.length);
+			expected[index] = random.nextInt();
+			ids.set(index, expected[index]);
+		}
+		for(int i = 0; i < expected.length; ++i)
+			assertHex(expected[i] & 0x1FFFF, ids.get(i));
+		
+		BitBuffer buffer = BitBuffer.allocate(64 * 11 + 3);
+		PackedLongArray longs = new PackedLongArray(buffer, 3, 11, 64);
+		for(int i = 0; i < 11; ++i)
+			longs.set(i, i * 0x0123456789ABCDEFL);
+		buffer.setPosition(3);
+		for(int i = 0; i < 11; ++i)
+			assertHex(i * 0x0123456789ABCDEFL, buffer.getLong());
+		assertHex(5 * 0x0123456789ABCDEFL, longs.get(5));
+		
+		try{
+			ids.get(1000);
+			fail();
+		}catch(IndexOutOfBoundsException e){
+			//expected
+		}
+		try{
+			new PackedLongArray(buffer, 9, 11, 64);
+			fail();
+		}catch(IndexOutOfBoundsException e){
+			//expected
+		}
+	}
+
+	@Test
+	public void varCodeTest(){
+		Random random = new Random(13);
+		long[] values = new long[400];
+		for(int i = 0; i < values.length; ++i){
+			values[i] = random.nextLong() >>> random.nextInt(64);
+		}
+		values[0] = 0;
+		values[1] = 1;
+		values[2] = -1;
+		values[3] = Long.MAX_VALUE;
+		values[4] = Long.MIN_VALUE + 1;
+		
+		VarCode[] codes = {VarCode.VARINT, VarCode.ZIGZAG_VARINT, VarCode.ELIAS_GAMMA, VarCode.ELIAS_DELTA,
+				VarCode.EXP_GOLOMB, VarCode.SIGNED_EXP_GOLOMB, VarCode.expGolomb(3), VarCode.rice(0), VarCode.rice(60)};
+		for(int c = 0; c < codes.length; ++c){
+			VarCode code = codes[c];
+			long[] input = values.clone();
+			for(int i = 0; i < input.length; ++i){
+				if(c == 2 || c == 3)
+					input[i] |= 1; //no 0 in Elias codes
+				if(c == 4 || c == 6)
+					input[i] &= Long.MAX_VALUE; //no overflow of value + 2^k
+				if(c == 7)
+					input[i] &= 0x3FF; //keep unary part short
+			}
+			
+			BitBuffer buffer = BitBuffer.allocateDynamic();
+			buffer.putBoolean(true);
+			buffer.put(input, code);
+			buffer.put(input[3], code);
+			buffer.flip();
+			assertTrue(buffer.getBoolean());
+			long[] output = buffer.get(new long[input.length], code);
+			for(int i = 0; i < input.length; ++i)
+				assertHex(input[i], output[i]);
+			assertHex(input[3], buffer.getLong(code));
+			assertEquals(buffer.limit(), buffer.position());
+		}
+		
+		BitBuffer buffer = BitBuffer.allocate(64);
+		buffer.put(300, VarCode.VARINT).put(-2, VarCode.ZIGZAG_VARINT).put(4, VarCode.ELIAS_GAMMA)
+			.put(-1, VarCode.SIGNED_EXP_GOLOMB).put(9, VarCode.rice(2)).flip();
+		assertHex(0xAC, buffer.getIntUnsigned(8));
+		assertHex(0x02, buffer.getIntUnsigned(8));
+		assertHex(0x03, buffer.getIntUnsigned(8));
+		assertHex(0x04, buffer.getIntUnsigned(5));
+		assertHex(0x03, buffer.getIntUnsigned(3));
+		assertHex(0x05, buffer.getIntUnsigned(5));
+		assertHex(9L, VarCode.rice(2).decode(buffer.setPosition(32)));
+		
+		try{
+			VarCode.ELIAS_GAMMA.encode(BitBuffer.allocate(64), 0);
+			fail();
+		}catch(IllegalArgumentException e){
+			//expected
+		}
+		
+		BitBuffer truncated = BitBuffer.allocate(64).putByte((byte) 0x80).flip();
+		try{
+			VarCode.VARINT.decode(truncated);
+			fail();
+		}catch(BufferUnderflowException e){
+			//expected
+		}
+		assertEquals(0L, truncated.position());
+		
+		VarCode[] prefixCodes = {VarCode.VARINT, VarCode.ZIGZAG_VARINT, VarCode.ELIAS_GAMMA, VarCode.ELIAS_DELTA,
+				VarCode.EXP_GOLOMB, VarCode.SIGNED_EXP_GOLOMB, VarCode.expGolomb(3), VarCode.rice(4), VarCode.rice(30)};
+		for(VarCode code : prefixCodes){
+			for(long value : new long[]{5, 1000, 1L << 40}){
+				if(code == prefixCodes[7] && value > 1000)
+					continue;
+				long length = BitBuffer.allocate(2048).put(value, code).position();
+				for(long cut = 0; cut < length; ++cut){
+					BitBuffer cutCode = BitBuffer.allocate(2048).put(value, code).setPosition(cut).flip();
+					try{
+						code.decode(cutCode);
+						fail(value + " cut at " + cut);
+					}catch(BufferUnderflowException e){
+						//expected
+					}
+					assertTrue(cutCode.position() <= cutCode.limit());
+				}
+			}
+		}
+		
+		BitBuffer longVarint = BitBuffer.allocate(128);
+		for(int i = 0; i < 9; ++i){
+			longVarint.putByte((byte) 0x80);
+		}
+		longVarint.putByte((byte) 0x01);
+		assertHex(Long.MIN_VALUE, VarCode.VARINT.decode(longVarint.duplicate().flip()));
+		longVarint.setPosition(72).putByte((byte) 0x02);
+		try{
+			VarCode.VARINT.decode(longVarint.duplicate().flip());
+			fail();
+		}catch(IllegalStateException e){
+			//expected
+		}
+		try{
+			VarCode.VARINT.decode(longVarint.setPosition(64).flip());
+			fail();
+		}catch(BufferUnderflowException e){
+			//expected
+		}
+	}
+
+	@Test
+	public void absoluteAccessTest(){
+		for(BitBuffer buffer : new BitBuffer[]{BitBuffer.allocate(200), BitBuffer.allocateDirect(200),
+				BitBuffer.allocateLongArray(200), BitBuffer.allocateDynamic(200, GrowthPolicy.DOUBLING)}){
+			buffer.putInt(0x12345678);
+			buffer.putLong(3, 0x1FL, 5);
+			buffer.putInt(70, -5, 7);
+			buffer.putLong(130, 0x0123456789ABCDEFL, 64);
+			buffer.putBoolean(199, true);
+			assertEquals(32L, buffer.position());
+			
+			assertHex(0x1F, buffer.getIntUnsigned(3L, 5));
+			assertHex(-5, buffer.getInt(70L, 7));
+			assertHex(0x7B, buffer.getIntUnsigned(70L, 7));
+			assertHex(0x0123456789ABCDEFL, buffer.getLong(130L, 64));
+			assertTrue(buffer.getBoolean(199));
+			assertFalse(buffer.getBoolean(198));
+			assertEquals(32L, buffer.position());
+			
+			buffer.flip();
+			assertHex(0x1F345678, buffer.getInt());
+			
+			try{
+				buffer.getLong(200L, 64);
+				fail();
+			}catch(IndexOutOfBoundsException e){
+				//expected
+			}
+		}
+	}
+
+	@Test
+	public void sliceTest(){
+		for(BitBuffer buffer : new BitBuffer[]{BitBuffer.allocate(256), BitBuffer.allocateDirect(256),
+				BitBuffer.allocateLongArray(256)}){
+			for(int i = 0; i < 8; ++i)
+				buffer.putInt(0x11111111 * i);
+			
+			BitBuffer slice = buffer.slice(36, 100);
+			assertEquals(100L, slice.size());
+			assertEquals(0L, slice.position());
+			assertHex(0x1111111, slice.getInt(28));
+			slice.putInt(4L, 0xABCD, 16);
+			assertHex(0x11ABCD11, buffer.getInt(32L, 32));
+			BitBuffer nested = slice.slice(4, 16);
+			assertHex(0xABCD, nested.getIntUnsigned(16));
+			try{
+				slice.getLong(90L, 16);
+				fail();
+			}catch(IndexOutOfBoundsException e){
+				//expected
+			}
+			
+			buffer.flip();
+			buffer.getLong();
+			BitBuffer duplicate = buffer.duplicate();
+			assertTrue(duplicate.canRead());
+			assertEquals(64L, duplicate.position());
+			assertEquals(256L, duplicate.limit());
+			assertHex(0x22222222, duplicate.getInt());
+			assertEquals(64L, buffer.position());
+			
+			BitBuffer readOnly = buffer.asReadOnlyBuffer();
+			assertTrue(readOnly.isReadOnly());
+			assertTrue(readOnly.slice(0, 8).isReadOnly());
+			assertHex(0x22222222, readOnly.getInt());
+			try{
+				readOnly.putInt(0L, 1, 1);
+				fail();
+			}catch(java.nio.ReadOnlyBufferException e){
+				//expected
+			}
+			try{
+				readOnly.asByteBuffer().put(0, (byte) 1); //either read-only view or a copy
+			}catch(java.nio.ReadOnlyBufferException e){
+				//expected
+			}
+			assertHex(0, buffer.getInt(0L, 32));
+			
+			BitBuffer partial = buffer.slice(8, 12).clear();
+			buffer.putInt(0L, 0xFFFFFF, 24);
+			partial.asByteBuffer().put(1, (byte) 0);
+			assertHex(0xFFFFFF, buffer.getIntUnsigned(0L, 24));
+			try{
+				partial.putString("\0\0", StandardCharsets.UTF_8.newEncoder());
+			}catch(CharacterCodingException e){
+				throw new AssertionError(e);
+			}
+			assertHex(0xFF000F, buffer.getIntUnsigned(0L, 24));
+		}
+	}
+
+	@Test
+	public void parallelBulkTest(){
+		java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+		Random random = new Random(16);
+		int[] ints = new int[100003];
+		long[] longs = new long[100003];
+		for(int i = 0; i < ints.length; ++i){
+			ints[i] = random.nextInt();
+			longs[i] = random.nextLong();
+		}
+		for(int bits : new int[]{1, 7, 17, 32, 63, 64}){
+			for(BitBuffer buffer : new BitBuffer[]{BitBuffer.allocate(5 + 2L * ints.length * bits),
+					BitBuffer.allocateLongArray(5 + 2L * ints.length * bits), BitBuffer.allocateDynamic()}){
+				buffer.putInt(0, 5);
+				if(bits <= 32)
+					buffer.putParallel(ints, 0, ints.length, bits, pool);
+				buffer.putParallel(longs, 0, longs.length, bits, pool);
+				buffer.flip();
+				buffer.getInt(5);
+				
+				if(bits <= 32){
+					int[] intResult = buffer.getParallel(new int[ints.length], 0, ints.length, bits, pool);
+					for(int i = 0; i < ints.length; ++i)
+						assertHex((ints[i] << (32 - bits)) >> (32 - bits), intResult[i]);
+				}
+				long[] longResult = buffer.getParallel(new long[longs.length], bits);
+				for(int i = 0; i < longs.length; ++i)
+					assertHex((longs[i] << (64 - bits)) >> (64 - bits), longResult[i]);
+				assertEquals(buffer.limit(), buffer.position());
+			}
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void rankSelectTest(){
+		Random random = new Random(17);
+		for(int density : new int[]{2, 50, 1000}){
+			int size = 200003;
+			BitBuffer buffer = BitBuffer.allocateLongArray(size);
+			for(int i = 0; i < size; ++i)
+				buffer.putBoolean(random.nextInt(density) == 0);
+			buffer.flip();
+			
+			RankSelect index = new RankSelect(buffer);
+			assertEquals((long) size, index.size());
+			long ones = 0;
+			for(int i = 0; i < size; ++i){
+				if(i % 97 == 0)
+					assertEquals(ones, index.rank1(i));
+				if(buffer.getBoolean((long) i)){
+					assertEquals((long) i, index.select1(ones));
+					++ones;
+				}else{
+					assertEquals((long) i, index.select0(i - ones));
+				}
+			}
+			assertEquals(ones, index.ones());
+			assertEquals(ones, index.rank1(size));
+			assertEquals(size - ones, index.rank0(size));
+			try{
+				index.select1(ones);
+				fail();
+			}catch(IndexOutOfBoundsException e){
+				//expected
+			}
+		}
+	}
+
+	@Test
+	public void bitAlgebraTest(){
+		Random random = new Random(18);
+		int size = 1000;
+		BitSet a = new BitSet();
+		BitSet b = new BitSet();
+		BitBuffer bufferA = BitBuffer.allocate(size);
+		BitBuffer bufferB = BitBuffer.allocateLongArray(size + 100);
+		for(int i = 0; i < size; ++i){
+			boolean bitA = random.nextInt(3) == 0;
+			boolean bitB = random.nextBoolean();
+			a.set(i, bitA);
+			b.set(i, bitB);
+			bufferA.putBoolean(bitA);
+			bufferB.putBoolean(bitB);
+		}
+		
+		assertEquals((long) a.cardinality(), bufferA.cardinality());
+		assertTrue(bufferA.intersects(bufferB));
+		assertFalse(bufferA.intersects(BitBuffer.allocate(size)));
+		for(int i = 0; i < size; i += 7){
+			assertEquals((long) a.nextSetBit(i), bufferA.nextSetBit(i));
+			assertEquals((long) a.nextClearBit(i), bufferA.nextClearBit(i));
+			assertEquals((long) a.previousSetBit(i), bufferA.previousSetBit(i));
+		}
+		assertEquals(-1L, BitBuffer.allocate(100).nextSetBit(0));
+		
+		BitBuffer dst = BitBuffer.allocate(size);
+		BitSet expected = (BitSet) a.clone();
+		expected.and(b);
+		assertBits(expected, bufferA.and(bufferB, dst), size);
+		expected = (BitSet) a.clone();
+		expected.xor(b);
+		assertBits(expected, bufferA.xor(bufferB, dst), size);
+		expected = (BitSet) a.clone();
+		expected.andNot(b);
+		assertBits(expected, bufferA.andNot(bufferB, dst), size);
+		expected = (BitSet) a.clone();
+		expected.flip(0, size);
+		assertBits(expected, bufferA.not(dst), size);
+		
+		expected = (BitSet) a.clone();
+		expected.or(b);
+		assertBits(expected, bufferA.or(bufferB), size);
+		
+		BitBuffer range = BitBuffer.allocate(16);
+		range.putInt(0xFF00, 16);
+		range.xor(3, BitBuffer.wrap(new byte[]{(byte) 0xFF}), 1, 5);
+		assertHex(0xE000, range.getIntUnsigned(0L, 16));
+		assertHex(0x1FFF, range.not(0, 16).getIntUnsigned(0L, 16));
+		
+		BitBuffer overlapping = BitBuffer.allocate(200);
+		overlapping.putLong(-1L).putLong(-1L).putLong(-1L).putLong(-1L, 8);
+		overlapping.xor(64, overlapping, 0, 136);
+		assertHex(-1L, overlapping.getLongUnsigned(0L, 64));
+		assertHex(0L, overlapping.getLongUnsigned(64L, 64));
+		assertHex(0L, overlapping.getLongUnsigned(128L, 64));
+		assertHex(0L, overlapping.getLongUnsigned(192L, 8));
+		overlapping.or(0, overlapping, 8, 192);
+		assertHex(-1L, overlapping.getLongUnsigned(0L, 64));
+		assertHex(0L, overlapping.getLongUnsigned(64L, 64));
+	}
+
+	@Test
+	public void bitOrderTest(){
+		BitBuffer deflate = BitBuffer.allocate(8).bitOrder(BitOrder.LSB_FIRST);
+		deflate.putInt(0b101, 3).putInt(0b11, 2).putInt(0b010, 3);
+		assertBits((byte) 0x5D, deflate.asByteArray()[0]);
+		assertTrue(deflate.getBoolean(0L));
+		assertFalse(deflate.getBoolean(1L));
+		assertTrue(deflate.asBitSet().get(0));
+		deflate.flip();
+		assertHex(0b101, deflate.getIntUnsigned(3));
+		assertHex(0b11, deflate.getIntUnsigned(2));
+		assertHex(0b010, deflate.getIntUnsigned(3));
+		
+		BitBuffer little = BitBuffer.allocate(64).bitOrder(BitOrder.LSB_FIRST);
+		assertEquals(ByteOrder.LITTLE_ENDIAN, little.order());
+		little.putInt(0x12345678);
+		little.order(ByteOrder.BIG_ENDIAN).putInt(0x12345678);
+		assertTrue(Arrays.equals(new byte[]{0x78, 0x56, 0x34, 0x12, 0x12, 0x34, 0x56, 0x78}, little.asByteArray()));
+		
+		BitBuffer swapped = BitBuffer.allocate(96).order(ByteOrder.LITTLE_ENDIAN);
+		swapped.putInt(0x12345678).putLong(0x0102030405060708L);
+		assertTrue(Arrays.equals(new byte[]{0x78, 0x56, 0x34, 0x12, 8, 7, 6, 5, 4, 3, 2, 1}, swapped.asByteArray()));
+		swapped.flip();
+		assertHex(0x12345678, swapped.getInt());
+		assertHex(0x0102030405060708L, swapped.getLong());
+		
+		Random random = new Random(19);
+		BitBuffer[] buffers = {BitBuffer.allocate(4096), BitBuffer.allocateDirect(4096), BitBuffer.allocateDynamic(),
+				BitBuffer.allocate(4104).slice(5, 4096)};
+		for(BitBuffer buffer : buffers){
+			buffer.bitOrder(BitOrder.LSB_FIRST);
+			int[] widths = new int[60];
+			long[] values = new long[widths.length];
+			for(int i = 0; i < widths.length; ++i){
+				widths[i] = 1 + random.nextInt(64);
+				values[i] = random.nextLong() & (-1L >>> (64 - widths[i]));
+				buffer.putLong(values[i], widths[i]);
+			}
+			buffer.flip();
+			long index = 0;
+			for(int i = 0; i < widths.length; ++i){
+				assertHex(values[i], buffer.getLongUnsigned(index, widths[i]));
+				assertHex(values[i], buffer.getLongUnsigned(widths[i]));
+				index += widths[i];
+			}
+		}
+		
+		int[] packed = new int[200];
+		for(int i = 0; i < packed.length; ++i){
+			packed[i] = random.nextInt(128) - 64;
+		}
+		BitBuffer bulk = BitBuffer.allocate(3 + 7 * 200).bitOrder(BitOrder.LSB_FIRST);
+		BitBuffer single = BitBuffer.allocate(3 + 7 * 200).bitOrder(BitOrder.LSB_FIRST);
+		bulk.putInt(5, 3).put(packed, 7);
+		single.putInt(5, 3);
+		for(int value : packed){
+			single.putInt(value, 7);
+		}
+		assertTrue(Arrays.equals(single.asByteArray(), bulk.asByteArray()));
+		int[] unpacked = new int[packed.length];
+		bulk.flip().setPosition(3);
+		bulk.get(unpacked, 7);
+		assertTrue(Arrays.equals(packed, unpacked));
+		
+		BitBuffer msb = BitBuffer.wrap(new byte[]{(byte) 0x80, 0x0F});
+		BitBuffer lsb = BitBuffer.allocate(16).bitOrder(BitOrder.LSB_FIRST);
+		lsb.put(msb, 0, 16);
+		assertTrue(Arrays.equals(new byte[]{0x01, (byte) 0xF0}, lsb.asByteArray()));
+		
+		BitBuffer codes = BitBuffer.allocate(1024).bitOrder(BitOrder.LSB_FIRST);
+		codes.put(300, VarCode.VARINT);
+		assertTrue(Arrays.equals(new byte[]{(byte) 0xAC, 0x02}, Arrays.copyOf(codes.asByteArray(), 2)));
+		long[] numbers = {0, 1, 5, 300, 1L << 40, (1L << 61) + 3};
+		codes.put(numbers, VarCode.expGolomb(2)).put(numbers, VarCode.VARINT);
+		codes.flip();
+		long[] decoded = new long[numbers.length];
+		assertEquals(300L, codes.getLong(VarCode.VARINT));
+		assertTrue(Arrays.equals(numbers, codes.get(decoded, VarCode.expGolomb(2))));
+		assertTrue(Arrays.equals(numbers, codes.get(decoded, VarCode.VARINT)));
+		
+		BitBuffer growing = BitBuffer.allocateDynamic(8).bitOrder(BitOrder.LSB_FIRST);
+		growing.putInt(1, 7).putLong(0x7123456789ABCDEFL, 63);
+		growing.flip();
+		assertHex(1, growing.getIntUnsigned(7));
+		assertHex(0x7123456789ABCDEFL, growing.getLongUnsigned(63));
+		
+		BitBuffer parent = BitBuffer.allocate(64).bitOrder(BitOrder.LSB_FIRST);
+		parent.putLong(0x0123456789ABCDEFL);
+		BitBuffer slice = parent.slice(3, 40);
+		assertEquals(BitOrder.LSB_FIRST, slice.bitOrder());
+		assertHex(parent.getLongUnsigned(3L, 40), slice.getLongUnsigned(0L, 40));
+	}
+	
+	@Test
+	public void huffmanTest(){
+		BitBuffer peek = BitBuffer.wrap(new byte[]{(byte) 0xAB});
+		assertHex(0xA, (int) peek.peekBits(4));
+		assertHex(0xAB0, (int) peek.peekBits(12));
+		assertEquals(0L, peek.position());
+		assertHex(0xB, peek.skipBits(4).getIntUnsigned(4));
+		
+		assertTrue(Arrays.equals(new int[]{1, 3, 3, 3, 4, 4}, HuffmanCode.lengths(new long[]{45, 13, 12, 16, 9, 5}, 15)));
+		int[] limited = HuffmanCode.lengths(new long[]{1, 1, 2, 3, 5, 8, 13, 21, 34, 55, 0}, 5);
+		long kraft = 0;
+		for(int length : limited){
+			assertTrue(length <= 5);
+			kraft += length == 0 ? 0 : 1 << (5 - length);
+		}
+		assertTrue(kraft <= 32);
+		assertEquals(0, limited[10]);
+		
+		int[] fixed = new int[288];
+		Arrays.fill(fixed, 0, 144, 8);
+		Arrays.fill(fixed, 144, 256, 9);
+		Arrays.fill(fixed, 256, 280, 7);
+		Arrays.fill(fixed, 280, 288, 8);
+		HuffmanCode literals = new HuffmanCode(fixed);
+		assertHex(0x30, literals.code(0));
+		assertHex(0x190, literals.code(144));
+		assertHex(0, literals.code(256));
+		assertHex(0xC0, literals.code(280));
+		BitBuffer block = BitBuffer.allocate(16);
+		block.put(0, literals).put(256, literals);
+		assertHex(0x3000, block.getIntUnsigned(0L, 16));
+		
+		Random random = new Random(20);
+		long[] frequencies = new long[300];
+		for(int i = 0; i < frequencies.length; ++i){
+			frequencies[i] = i % 7 == 0 ? 0 : 1L << random.nextInt(24);
+		}
+		HuffmanCode code = HuffmanCode.fromFrequencies(frequencies, 20);
+		assertTrue(code.maxLength() > 16);
+		int[] symbols = new int[5000];
+		for(int i = 0; i < symbols.length; ++i){
+			do{
+				symbols[i] = random.nextInt(frequencies.length);
+			}while(frequencies[symbols[i]] == 0);
+		}
+		for(BitOrder order : new BitOrder[]{BitOrder.MSB_FIRST, BitOrder.LSB_FIRST}){
+			BitBuffer bulk = BitBuffer.allocateDynamic().bitOrder(order);
+			BitBuffer single = BitBuffer.allocateDynamic().bitOrder(order);
+			bulk.putInt(3, 3).put(symbols, code);
+			single.putInt(3, 3);
+			for(int symbol : symbols){
+				single.put(symbol, code);
+			}
+			assertEquals(single.position(), bulk.position());
+			bulk.flip();
+			single.flip();
+			assertTrue(Arrays.equals(single.asByteArray(), bulk.asByteArray()));
+			
+			bulk.setPosition(3);
+			single.setPosition(3);
+			int[] decoded = new int[symbols.length];
+			assertTrue(Arrays.equals(symbols, bulk.get(decoded, code)));
+			for(int i = 0; i < symbols.length; ++i){
+				assertEquals(symbols[i], single.getInt(code));
+			}
+			assertEquals(single.limit(), single.position());
+			assertEquals(bulk.limit(), bulk.position());
+		}
+		
+		HuffmanCode small = HuffmanCode.fromFrequencies(new long[]{5, 1, 1, 3}, 8);
+		BitBuffer truncated = BitBuffer.allocate(64).put(new int[]{1, 2, 3}, small).flip();
+		int[] partial = {-1, -1, -1, -1, -1, -1};
+		try{
+			truncated.get(partial, small);
+			fail();
+		}catch(BufferUnderflowException e){
+		}
+		assertTrue(Arrays.equals(new int[]{1, 2, 3, -1, -1, -1}, partial));
+		assertEquals(truncated.limit(), truncated.position());
+		
+		HuffmanCode incomplete = new HuffmanCode(new int[]{1});
+		try{
+			BitBuffer.wrap(new byte[]{(byte) 0x80}).getInt(incomplete);
+			fail();
+		}catch(IllegalStateException e){
+		}
+	}
+	
+	@Test
+	public void bitReaderTest(){
+		Random random = new Random(21);
+		for(BitOrder order : new BitOrder[]{BitOrder.MSB_FIRST, BitOrder.LSB_FIRST}){
+			BitBuffer buffer = BitBuffer.allocate(20000).bitOrder(order);
+			int[] widths = new int[500];
+			for(int i = 0; i < widths.length; ++i){
+				widths[i] = i % 3 == 0 ? random.nextInt(65) : 1 + random.nextInt(12);
+				buffer.putLong(random.nextLong(), widths[i]);
+			}
+			buffer.flip();
+			buffer.setPosition(0);
+			BitReader reader = new BitReader(buffer);
+			for(int width : widths){
+				assertEquals(buffer.position(), reader.position());
+				assertEquals(buffer.peekBits(width), reader.peekBits(width));
+				if(width > 0 && width < 64)
+					assertEquals(buffer.getLong(buffer.position(), width), reader.peekBits(width) << (64 - width) >> (64 - width));
+				assertEquals(buffer.getLongUnsigned(width), reader.readBits(width));
+			}
+			assertEquals(0L, reader.remaining());
+			assertEquals(0L, reader.peekBits(7));
+			try{
+				reader.readBits(1);
+				fail();
+			}catch(BufferUnderflowException e){
+			}
+		}
+		
+		BitBuffer buffer = BitBuffer.wrap(new byte[]{(byte) 0xA5, 0x0F, (byte) 0xF0, 0x12});
+		BitReader reader = new BitReader(buffer);
+		assertHex(0x5, (int) reader.readBits(3));
+		assertEquals(1L, reader.readSignedBits(3));
+		assertTrue(reader.alignToByte().readBoolean() == false);
+		assertEquals(9L, reader.position());
+		assertEquals(24L, reader.alignToByte().skipBits(8).alignToByte().position());
+		assertHex(0x12, (int) reader.readBits(8));
+		assertEquals(0L, reader.remaining());
+		
+		HuffmanCode code = HuffmanCode.fromFrequencies(new long[]{5, 1, 1, 3}, 8);
+		BitBuffer symbols = BitBuffer.allocate(64).bitOrder(BitOrder.LSB_FIRST);
+		symbols.put(new int[]{3, 0, 1, 2}, code).flip();
+		reader = new BitReader(symbols);
+		assertEquals(3, code.decode(reader));
+		assertEquals(0, code.decode(reader));
+		assertEquals(1, code.decode(reader));
+		assertEquals(2, code.decode(reader));
+	}
+	
+	@Test
+	public void bitWriterTest(){
+		Random random = new Random(22);
+		HuffmanCode code = HuffmanCode.fromFrequencies(new long[]{5, 1, 1, 3}, 8);
+		for(BitOrder order : new BitOrder[]{BitOrder.MSB_FIRST, BitOrder.LSB_FIRST}){
+			BitBuffer expected = BitBuffer.allocate(20000).bitOrder(order);
+			BitBuffer actual = BitBuffer.allocateDynamic(8, GrowthPolicy.DOUBLING).bitOrder(order);
+			expected.putInt(5, 3);
+			actual.putInt(5, 3);
+			BitWriter writer = new BitWriter(actual);
+			for(int i = 0; i < 500; ++i){
+				int width = i % 3 == 0 ? random.nextInt(65) : 1 + random.nextInt(12);
+				long value = random.nextLong();
+				expected.putLong(value, width);
+				writer.writeBits(value, width);
+				assertEquals(expected.position(), writer.position());
+			}
+			code.encode(writer, 2);
+			expected.put(2, code);
+			writer.flush();
+			assertEquals(expected.position(), actual.position());
+			int bytes = (int) ((expected.position() + 7) / 8);
+			assertTrue(Arrays.equals(Arrays.copyOf(expected.asByteArray(), bytes), Arrays.copyOf(actual.asByteArray(), bytes)));
+		}
+		
+		BitBuffer buffer = BitBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF});
+		BitWriter writer = new BitWriter(buffer);
+		writer.writeBits(0, 3).writeBoolean(true).flush();
+		assertHex(0x1F, buffer.getIntUnsigned(0L, 8));
+		assertEquals(4L, buffer.position());
+		writer.writeBits(0, 1);
+		writer.close();
+		writer.close();
+		assertEquals(8L, buffer.position());
+		assertHex(0x10FF, buffer.getIntUnsigned(0L, 16));
+	}
+	
+	@Test
+	public void bitStreamTest() throws IOException {
+		Random random = new Random(23);
+		for(BitOrder order : new BitOrder[]{BitOrder.MSB_FIRST, BitOrder.LSB_FIRST}){
+			int[] widths = new int[2000];
+			long[] values = new long[widths.length];
+			BitBuffer reference = BitBuffer.allocate(64 * widths.length).bitOrder(order);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			BitOutputStream out = new BitOutputStream(Channels.newChannel(bytes), order, 16);
+			for(int i = 0; i < widths.length; ++i){
+				widths[i] = i % 5 == 0 ? random.nextInt(65) : 1 + random.nextInt(12);
+				values[i] = random.nextLong();
+				reference.putLong(values[i], widths[i]);
+				out.putLong(values[i], widths[i]);
+				if(i % 97 == 0)
+					out.flush();
+			}
+			assertEquals(reference.position(), out.position());
+			out.close();
+			byte[] expected = Arrays.copyOf(reference.asByteArray(), (int) ((reference.position() + 7) / 8));
+			assertTrue(Arrays.equals(expected, bytes.toByteArray()));
+			
+			BitInputStream in = new BitInputStream(Channels.newChannel(new ByteArrayInputStream(expected)), order, 3);
+			for(int i = 0; i < widths.length; ++i){
+				long value = widths[i] == 0 ? 0 : values[i] & (-1L >>> (64 - widths[i]));
+				if(widths[i] <= 56)
+					assertEquals(value, in.peekBits(widths[i]));
+				if(i % 7 == 0)
+					assertEquals(widths[i] == 0 ? 0 : values[i] << (64 - widths[i]) >> (64 - widths[i]), in.getLong(widths[i]));
+				else
+					assertEquals(value, in.getLongUnsigned(widths[i]));
+			}
+			assertEquals(reference.position(), in.position());
+			in.alignToByte();
+			try{
+				in.getBoolean();
+				fail();
+			}catch(EOFException e){
+			}
+			in.close();
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BitOutputStream out = new BitOutputStream(bytes);
+		out.putBoolean(true).putInt(0x1234, 16).alignToByte().putByte((byte) 0x5A, 4).putLong(-1L);
+		out.flush();
+		assertEquals(11, bytes.size());
+		out.close();
+		out.close();
+		assertTrue(Arrays.equals(new byte[]{(byte) 0x89, 0x1A, 0x00, (byte) 0xAF, -1, -1, -1, -1, -1, -1, -1, (byte) 0xF0}, bytes.toByteArray()));
+		
+		BitInputStream in = new BitInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertTrue(in.getBoolean());
+		assertHex(0x1234, in.getIntUnsigned(16));
+		in.alignToByte();
+		assertEquals(24L, in.position());
+		assertHex(0xA, in.getIntUnsigned(4));
+		assertHex(-1L, in.skipBits(4).getLong(60));
+		assertHex(0, in.getInt(4));
+		assertEquals(96L, in.position());
+		in.close();
+	}
+	
+	public static void assertBits(BitSet expected, BitBuffer actual, int size){
+		for(int i = 0; i < size; ++i){
+			if(expected.get(i) != actual.getBoolean((long) i))
+				throw new AssertionError("bit " + i + " expected:<" + expected.get(i) + ">");
+		}
+	}
+	
 	public static void assertHex(long expected, long actual){
 		if(expected != actual)
 			throw new AssertionError("expected:<"+"0x" + Long.toHexString(expected)